@@ -244,6 +244,13 @@ function visualVmConfig(context: ExtensionContext): ServerOptions {
         '-cp', classes + ":" + cpContents, 
         '-Xverify:none', // helps VisualVM avoid 'error 62'
         '-Xdebug',
+        // ParsePool uses javac's parser directly, and FocusPatch re-attributes trees in place
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.api=ALL-UNNAMED',
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.code=ALL-UNNAMED',
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.comp=ALL-UNNAMED',
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.parser=ALL-UNNAMED',
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.tree=ALL-UNNAMED',
+        '--add-exports', 'jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED',
         // '-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=*:5005',
         'org.javacs.Main'
     ];
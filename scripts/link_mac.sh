@@ -20,5 +20,6 @@ $JAVA_HOME/bin/jlink \
   --module-path modules/gson.jar:target/classes \
   --add-modules gson,javacs \
   --launcher launcher=javacs/org.javacs.Main \
+  --add-options "--add-exports jdk.compiler/com.sun.tools.javac.api=javacs --add-exports jdk.compiler/com.sun.tools.javac.code=javacs --add-exports jdk.compiler/com.sun.tools.javac.comp=javacs --add-exports jdk.compiler/com.sun.tools.javac.parser=javacs --add-exports jdk.compiler/com.sun.tools.javac.tree=javacs --add-exports jdk.compiler/com.sun.tools.javac.util=javacs" \
   --output dist/mac \
   --compress 2 
\ No newline at end of file
@@ -34,5 +34,6 @@ $REAL_JAVA_HOME/bin/jlink \
   --module-path $JAVA_HOME/jmods:modules/gson.jar:target/classes \
   --add-modules gson,javacs \
   --launcher launcher=javacs/org.javacs.Main \
+  --add-options "--add-exports jdk.compiler/com.sun.tools.javac.api=javacs --add-exports jdk.compiler/com.sun.tools.javac.code=javacs --add-exports jdk.compiler/com.sun.tools.javac.comp=javacs --add-exports jdk.compiler/com.sun.tools.javac.parser=javacs --add-exports jdk.compiler/com.sun.tools.javac.tree=javacs --add-exports jdk.compiler/com.sun.tools.javac.util=javacs" \
   --output dist/windows \
   --compress 2 
\ No newline at end of file
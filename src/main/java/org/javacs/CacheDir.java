@@ -0,0 +1,34 @@
+package org.javacs;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A directory where we can keep files between sessions, unique to each workspace */
+class CacheDir {
+    static Path of(Path workspaceRoot) {
+        var key = workspaceRoot.toAbsolutePath().normalize().toString();
+        return base().resolve("javacs").resolve(hash(key));
+    }
+
+    private static Path base() {
+        var xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && !xdg.isBlank()) return Paths.get(xdg);
+        return Paths.get(System.getProperty("user.home"), ".cache");
+    }
+
+    static String hash(String key) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (var i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.javacs;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Aborts a javac task once `cancelled` returns true. javac checks in with its listeners before it parses, enters or
+ * analyzes each file, including the dependencies it reads from the source path, so the task stops within one phase.
+ * javac wraps the exception we throw, so callers should check `cancelled` again when a task fails.
+ */
+class Cancellation implements TaskListener {
+    private final BooleanSupplier cancelled;
+
+    Cancellation(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public void started(TaskEvent e) {
+        if (cancelled.getAsBoolean()) throw new CancellationException();
+    }
+}
@@ -13,6 +13,77 @@ class ClassHeader {
         return new ClassHeader(new DataInputStream(in));
     }
 
+    /**
+     * Read just the access_flags of a class file, skipping over the constant pool instead of reading it. Returns -1 if
+     * `in` isn't a class file we understand.
+     */
+    static int accessFlags(InputStream stream) {
+        var in = new DataInputStream(stream);
+        try {
+            if (in.readInt() != MAGIC) return -1;
+            in.readUnsignedShort(); // minor_version
+            in.readUnsignedShort(); // major_version
+            var constantPoolCount = in.readUnsignedShort();
+            var i = 1;
+            while (i < constantPoolCount) {
+                var tag = in.readUnsignedByte();
+                var size = constantSize(tag);
+                if (size == -1) return -1;
+                if (tag == CONSTANT_Utf8) size = in.readUnsignedShort();
+                skip(in, size);
+                i += tag == CONSTANT_Long || tag == CONSTANT_Double ? 2 : 1;
+            }
+            return in.readUnsignedShort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /** Skip exactly `n` bytes; InputStream.skipNBytes(_) would do this, but it's not in JDK 11 */
+    private static void skip(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            var skipped = in.skipBytes(n);
+            if (skipped == 0) {
+                // skipBytes(_) may skip nothing without reaching the end, so read a byte to tell
+                in.readByte();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /** The number of bytes after the tag of a constant, or for CONSTANT_Utf8 after its length */
+    private static int constantSize(int tag) {
+        switch (tag) {
+            case CONSTANT_Class:
+            case CONSTANT_String:
+            case CONSTANT_MethodType:
+            case CONSTANT_Module:
+            case CONSTANT_Package:
+                return 2;
+            case CONSTANT_MethodHandle:
+                return 3;
+            case CONSTANT_Fieldref:
+            case CONSTANT_Methodref:
+            case CONSTANT_InterfaceMethodref:
+            case CONSTANT_Integer:
+            case CONSTANT_Float:
+            case CONSTANT_NameAndType:
+            case CONSTANT_Dynamic:
+            case CONSTANT_InvokeDynamic:
+                return 4;
+            case CONSTANT_Long:
+            case CONSTANT_Double:
+                return 8;
+            case CONSTANT_Utf8:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    private static final int MAGIC = 0xCAFEBABE;
+
     private ClassHeader(DataInputStream in) {
         try {
             // u4             magic;
@@ -45,7 +116,7 @@ class ClassHeader {
         }
     }
 
-    private static final int ACC_PUBLIC = 0x0001; // Declared public; may be accessed from outside its package.
+    static final int ACC_PUBLIC = 0x0001; // Declared public; may be accessed from outside its package.
     private static final int ACC_FINAL = 0x0010; // Declared final; no subclasses allowed.
     private static final int ACC_SUPER =
             0x0020; // Treat superclass methods specially when invoked by the invokespecial instruction.
@@ -69,6 +140,7 @@ class ClassHeader {
     private static final int CONSTANT_Utf8 = 1;
     private static final int CONSTANT_MethodHandle = 15;
     private static final int CONSTANT_MethodType = 16;
+    private static final int CONSTANT_Dynamic = 17;
     private static final int CONSTANT_InvokeDynamic = 18;
     private static final int CONSTANT_Module = 19;
     private static final int CONSTANT_Package = 20;
@@ -79,6 +151,8 @@ class ClassHeader {
             case CONSTANT_Class:
             case CONSTANT_String:
             case CONSTANT_MethodType:
+            case CONSTANT_Module:
+            case CONSTANT_Package:
                 {
                     var info = in.readNBytes(2);
                     return new Constant(tag, info);
@@ -89,6 +163,7 @@ class ClassHeader {
             case CONSTANT_Integer:
             case CONSTANT_Float:
             case CONSTANT_NameAndType:
+            case CONSTANT_Dynamic:
             case CONSTANT_InvokeDynamic:
                 {
                     var info = in.readNBytes(4);
@@ -107,8 +182,6 @@ class ClassHeader {
                     return new Constant(tag, string);
                 }
             case CONSTANT_MethodHandle:
-            case CONSTANT_Module:
-            case CONSTANT_Package:
                 {
                     var info = in.readNBytes(3);
                     return new Constant(tag, info);
@@ -0,0 +1,89 @@
+package org.javacs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The top-level classes in the JDK or on the class path, indexed for completion. Class names are sorted by simple name,
+ * which flattens a prefix trie into an array: the classes that start with a prefix are a contiguous range, found by
+ * binary search. Packages are kept as a tree from each package to its sub-packages. Both queries take time
+ * proportional to the size of the result, rather than the number of classes. We also keep the access_flags that
+ * Classes read from each class file, so completion never has to open a class file to see if it's public.
+ */
+class ClassNames {
+    /** Simple names of all classes, sorted */
+    private final String[] simpleNames;
+    /** qualifiedNames[i] is the qualified name of the class whose simple name is simpleNames[i] */
+    private final String[] qualifiedNames;
+    /** accessFlags[i] is the access_flags of qualifiedNames[i], or UNKNOWN */
+    private final char[] accessFlags;
+    /** For each package, the qualified names of its immediate sub-packages */
+    private final Map<String, Set<String>> subPackages = new HashMap<>();
+
+    /** Index `classes`, which maps each qualified name to its access_flags, or -1 if they are unknown */
+    ClassNames(Map<String, Integer> classes) {
+        var sorted = new ArrayList<String>(classes.keySet());
+        sorted.sort(Comparator.comparing(Parser::lastName));
+        this.qualifiedNames = sorted.toArray(new String[0]);
+        this.simpleNames = new String[qualifiedNames.length];
+        this.accessFlags = new char[qualifiedNames.length];
+        for (var i = 0; i < qualifiedNames.length; i++) {
+            simpleNames[i] = Parser.lastName(qualifiedNames[i]);
+            int flags = classes.get(qualifiedNames[i]);
+            accessFlags[i] = flags == -1 ? UNKNOWN : (char) flags;
+            addPackage(Parser.mostName(qualifiedNames[i]));
+        }
+    }
+
+    /** access_flags is a u2, and no class file sets every flag */
+    private static final char UNKNOWN = Character.MAX_VALUE;
+
+    private void addPackage(String packageName) {
+        while (!packageName.isEmpty()) {
+            var parent = Parser.mostName(packageName);
+            var children = subPackages.computeIfAbsent(parent, __ -> new TreeSet<>());
+            // If we've seen this package before, we've seen all its parents too
+            if (!children.add(packageName)) return;
+            packageName = parent;
+        }
+    }
+
+    /** Qualified names of the classes whose simple name starts with `prefix` */
+    List<String> startingWith(String prefix) {
+        var start = lowerBound(prefix);
+        var end = lowerBound(prefix + Character.MAX_VALUE);
+        return Arrays.asList(qualifiedNames).subList(start, end);
+    }
+
+    /** The index of the first simple name that is not less than `key` */
+    private int lowerBound(String key) {
+        int lo = 0, hi = simpleNames.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (simpleNames[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** The access_flags of `qualifiedName`, or -1 if it isn't one of these classes or we couldn't read its class file */
+    int accessFlags(String qualifiedName) {
+        var simpleName = Parser.lastName(qualifiedName);
+        for (var i = lowerBound(simpleName); i < simpleNames.length && simpleNames[i].equals(simpleName); i++) {
+            if (!qualifiedNames[i].equals(qualifiedName)) continue;
+            return accessFlags[i] == UNKNOWN ? -1 : accessFlags[i];
+        }
+        return -1;
+    }
+
+    /** Qualified names of the immediate sub-packages of `packageName` that contain classes */
+    Set<String> subPackages(String packageName) {
+        return subPackages.getOrDefault(packageName, Set.of());
+    }
+}
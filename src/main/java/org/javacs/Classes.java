@@ -2,6 +2,7 @@ package org.javacs;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -9,12 +10,17 @@ import java.net.URLClassLoader;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.javacs.guava.ClassPath;
 
 class Classes {
@@ -113,10 +119,11 @@ class Classes {
         "jdk.zipfs",
     };
 
-    static Set<String> jdkTopLevelClasses() {
+    /** The top-level classes in the JDK, and the access_flags of each one, or -1 if we couldn't read it */
+    static Map<String, Integer> jdkTopLevelClasses() {
         LOG.info("Searching for top-level classes in the JDK");
 
-        var classes = new HashSet<String>();
+        var classFiles = new HashMap<String, Path>();
         var fs = FileSystems.getFileSystem(URI.create("jrt:/"));
         for (var m : JDK_MODULES) {
             var moduleRoot = fs.getPath(String.format("/modules/%s/", m));
@@ -128,7 +135,7 @@ class Classes {
                     if (relative.endsWith(".class") && !relative.contains("$")) {
                         var trim = relative.substring(0, relative.length() - ".class".length());
                         var qualifiedName = trim.replace(File.separatorChar, '.');
-                        classes.add(qualifiedName);
+                        classFiles.put(qualifiedName, classFile);
                     }
                 }
             } catch (IOException e) {
@@ -136,12 +143,39 @@ class Classes {
             }
         }
 
+        var classes = readAccessFlags(classFiles, Files::newInputStream);
         LOG.info(String.format("Found %d classes in the java platform", classes.size()));
 
         return classes;
     }
 
-    static Set<String> classPathTopLevelClasses(Set<Path> classPath) {
+    private interface Open<T> {
+        InputStream open(T classFile) throws IOException;
+    }
+
+    /**
+     * Read the access_flags of every class in `classFiles`, so completion can check if a class is public without
+     * opening its class file. Reading headers is IO-bound, so we read them in parallel.
+     */
+    private static <T> Map<String, Integer> readAccessFlags(Map<String, T> classFiles, Open<T> open) {
+        var started = Instant.now();
+        var classes = new ConcurrentHashMap<String, Integer>();
+        Consumer<Map.Entry<String, T>> read =
+                entry -> {
+                    try (var in = open.open(entry.getValue())) {
+                        classes.put(entry.getKey(), ClassHeader.accessFlags(in));
+                    } catch (IOException e) {
+                        classes.put(entry.getKey(), -1);
+                    }
+                };
+        ForkJoinPool.commonPool().submit(() -> classFiles.entrySet().parallelStream().forEach(read)).join();
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("...read access flags of %,d classes in %,d ms", classes.size(), elapsed));
+        return classes;
+    }
+
+    /** The top-level classes in `classPath`, and the access_flags of each one, or -1 if we couldn't read it */
+    static Map<String, Integer> classPathTopLevelClasses(Set<Path> classPath) {
         LOG.info(String.format("Searching for top-level classes in %d classpath locations", classPath.size()));
 
         Function<Path, URL> toUrl =
@@ -160,7 +194,12 @@ class Classes {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        var classes = scanner.getTopLevelClasses().stream().map(info -> info.getName()).collect(Collectors.toSet());
+        var classFiles = new HashMap<String, ClassPath.ClassInfo>();
+        for (var info : scanner.getTopLevelClasses()) {
+            // Like javac, use the first class file on the class path with each name
+            classFiles.putIfAbsent(info.getName(), info);
+        }
+        var classes = readAccessFlags(classFiles, info -> classLoader.getResourceAsStream(info.getResourceName()));
 
         LOG.info(String.format("Found %d classes in classpath", classes.size()));
 
@@ -0,0 +1,127 @@
+package org.javacs;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Recently compiled files, shared by hover, goto definition, find references and code lens, so switching between
+ * editors doesn't recompile a file that hasn't changed. A compilation is reused as long as the file has the same
+ * version in the editor, or the same modified time on disk if it isn't open, and no other file has changed since.
+ *
+ * <p>Each compilation holds on to a whole javac Context, so the cache is bounded by an estimate of their memory, and
+ * evicts the least recently used first. The most recent compilation is always kept.
+ */
+class CompileCache {
+    /** Rough memory of a javac Context, with the symbols of the JDK and class path classes a typical file uses */
+    private static final long CONTEXT_BYTES = 16_000_000;
+    /** The trees, symbols and types of a compiled file take roughly 100x the memory of its source */
+    private static final long BYTES_PER_CHARACTER = 100;
+
+    private static class Entry {
+        /** Version in the editor, or -1 if the file wasn't open */
+        final int version;
+        /** Modified time on disk, or null if the file was open */
+        final Instant modified;
+        /** FileStore.changes() and FileStore.versions() when we compiled, so we can tell if a dependency has changed */
+        final long changes;
+
+        final Map<URI, Integer> versions;
+        final long bytes;
+        final CompileFile compiled;
+
+        Entry(int version, Instant modified, long changes, Map<URI, Integer> versions, CompileFile compiled) {
+            this.version = version;
+            this.modified = modified;
+            this.changes = changes;
+            this.versions = versions;
+            this.bytes = CONTEXT_BYTES + BYTES_PER_CHARACTER * compiled.contents.length();
+            this.compiled = compiled;
+        }
+    }
+
+    private final JavaCompilerService parent;
+    private final long maxBytes;
+    /** In order of last use, oldest first */
+    private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes, hits, misses, evictions;
+
+    CompileCache(JavaCompilerService parent) {
+        // Leave most of the heap for everything else
+        this(parent, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    CompileCache(JavaCompilerService parent, long maxBytes) {
+        this.parent = parent;
+        this.maxBytes = maxBytes;
+    }
+
+    /** The compilation of the current contents of `file` */
+    synchronized CompileFile get(URI file) {
+        return compile(file, () -> false);
+    }
+
+    /**
+     * Compile `file` ahead of time, if it isn't already cached, so the next get(file) finds it ready. Gives up, and
+     * caches nothing, as soon as `cancelled` returns true. Returns false if it gave up.
+     */
+    synchronized boolean speculate(URI file, BooleanSupplier cancelled) {
+        try {
+            compile(file, cancelled);
+            return true;
+        } catch (CancellationException e) {
+            LOG.info(String.format("...cancelled compiling %s", file.getPath()));
+            return false;
+        }
+    }
+
+    private CompileFile compile(URI file, BooleanSupplier cancelled) {
+        var version = FileStore.version(file);
+        var modified = version == -1 ? FileStore.modified(Paths.get(file)) : null;
+        var changes = FileStore.changes();
+        var versions = FileStore.versions();
+        var existing = entries.get(file);
+        if (existing != null
+                && existing.version == version
+                && Objects.equals(existing.modified, modified)
+                && existing.changes == changes
+                && existing.versions.equals(versions)) {
+            hits++;
+            return existing.compiled;
+        }
+        misses++;
+        LOG.info(String.format("Compile %s...", file.getPath()));
+        var compiled = new CompileFile(parent, file, cancelled);
+        put(file, new Entry(version, modified, changes, versions, compiled));
+        return compiled;
+    }
+
+    private void put(URI file, Entry entry) {
+        var replaced = entries.put(file, entry);
+        if (replaced != null) bytes -= replaced.bytes;
+        bytes += entry.bytes;
+        var oldest = entries.values().iterator();
+        while (bytes > maxBytes && oldest.hasNext()) {
+            var next = oldest.next();
+            if (next == entry) break;
+            bytes -= next.bytes;
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized String stats() {
+        return String.format(
+                "%,d files of ~%,d MB, %,d hits, %,d misses, %,d evictions",
+                entries.size(), bytes / 1_000_000, hits, misses, evictions);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
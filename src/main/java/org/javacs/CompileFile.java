@@ -5,9 +5,13 @@ import com.sun.source.util.*;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import javax.lang.model.element.*;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 import org.javacs.lsp.*;
 
 public class CompileFile {
@@ -17,15 +21,26 @@ public class CompileFile {
     private final JavacTask task;
     private final Trees trees;
     public final CompilationUnitTree root;
+    /**
+     * Diagnostics from compiling this file. CompileCache keeps many files, and parent.diags only holds the diagnostics
+     * of the last compilation.
+     */
+    private final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
 
     CompileFile(JavaCompilerService parent, URI file) {
+        this(parent, file, () -> false);
+    }
+
+    /** Compile `file`, giving up with CancellationException as soon as `cancelled` returns true */
+    CompileFile(JavaCompilerService parent, URI file, BooleanSupplier cancelled) {
         this.parent = parent;
         this.file = file;
         this.contents = FileStore.contents(file);
-        this.task = CompileFocus.singleFileTask(parent, file, contents);
+        this.task = CompileFocus.singleFileTask(parent, file, contents, diags::add);
         this.trees = Trees.instance(task);
         var profiler = new Profiler();
         task.addTaskListener(profiler);
+        task.addTaskListener(new Cancellation(cancelled));
         try {
             this.root = task.parse().iterator().next();
             // The results of task.analyze() are unreliable when errors are present
@@ -33,6 +48,9 @@ public class CompileFile {
             task.analyze();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            throw e;
         }
         profiler.print();
     }
@@ -57,7 +75,7 @@ public class CompileFile {
     }
 
     public Index index(List<Element> declarations) {
-        return new Index(task, root, parent.diags, declarations);
+        return new Index(task, root, diags, declarations);
     }
 
     public Optional<Element> element(int line, int character) {
@@ -198,7 +216,7 @@ public class CompileFile {
     public List<String> fixImports() {
         // Check diagnostics for missing imports
         var unresolved = new HashSet<String>();
-        for (var d : parent.diags) {
+        for (var d : diags) {
             if (d.getCode().equals("compiler.err.cant.resolve.location") && d.getSource().toUri().equals(file)) {
                 long start = d.getStartPosition(), end = d.getEndPosition();
                 var id = contents.substring((int) start, (int) end);
@@ -212,12 +230,7 @@ public class CompileFile {
             }
         }
         // Look at imports in other classes to help us guess how to fix imports
-        // TODO cache parsed imports on a per-file basis
-        var sourcePathImports = Parser.existingImports(FileStore.all());
-        var classes = new HashSet<String>();
-        classes.addAll(parent.jdkClasses);
-        classes.addAll(parent.classPathClasses);
-        var fixes = Parser.resolveSymbols(unresolved, sourcePathImports, classes);
+        var fixes = parent.importIndex.resolve(unresolved);
         // Figure out which existing imports are actually used
         var trees = Trees.instance(task);
         var references = new HashSet<String>();
@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.function.*;
 import java.util.logging.Level;
@@ -15,12 +17,15 @@ import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
+import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
-import javax.tools.StandardLocation;
 
 public class CompileFocus {
     public static final int MAX_COMPLETION_ITEMS = 50;
 
+    /** After this many patches, we start over with a fresh task, so the names and symbols of old edits don't pile up */
+    private static final int MAX_PATCHES = 100;
+
     private final JavaCompilerService parent;
     private final URI file;
     private final String contents;
@@ -30,13 +35,20 @@ public class CompileFocus {
     private final Types types;
     private final CompilationUnitTree root;
     private final TreePath path;
+    // What the rest of the workspace looked like when we compiled `task`
+    private final long changes;
+    private final Map<URI, Integer> otherVersions;
+    private final int patches;
 
-    CompileFocus(JavaCompilerService parent, URI file, int line, int character) {
+    CompileFocus(JavaCompilerService parent, URI file, String contents, int line, int character) {
         this.parent = parent;
         this.file = file;
-        this.contents = Pruner.prune(file, line, character);
+        this.contents = contents;
         this.line = line;
         this.character = character;
+        this.changes = FileStore.changes();
+        this.otherVersions = otherVersions(file);
+        this.patches = 0;
         this.task = singleFileTask(parent, file, this.contents);
         this.trees = Trees.instance(task);
         this.types = task.getTypes();
@@ -55,14 +67,65 @@ public class CompileFocus {
         this.path = findPath(task, root, line, character);
     }
 
+    private CompileFocus(CompileFocus previous, String contents, int line, int character) {
+        this.parent = previous.parent;
+        this.file = previous.file;
+        this.contents = contents;
+        this.line = line;
+        this.character = character;
+        this.changes = previous.changes;
+        this.otherVersions = previous.otherVersions;
+        this.patches = previous.patches + 1;
+        this.task = previous.task;
+        this.trees = previous.trees;
+        this.types = previous.types;
+        this.root = previous.root;
+        this.path = findPath(task, root, line, character);
+    }
+
+    /**
+     * If `contents` only differs from the contents of this focus inside the method the user is editing, re-parse and
+     * re-attribute that method in the existing task. This focus can't be used after a successful patch.
+     */
+    Optional<CompileFocus> patch(URI file, String contents, int line, int character) {
+        if (!file.equals(this.file)
+                || patches >= MAX_PATCHES
+                || changes != FileStore.changes()
+                || !otherVersions.equals(otherVersions(file))) return Optional.empty();
+        var started = Instant.now();
+        parent.diags.clear();
+        var newFile = new SourceFileObject(file, contents);
+        if (!FocusPatch.apply(task, root, this.contents, newFile, contents, line, character)) return Optional.empty();
+        var patched = new CompileFocus(this, contents, line, character);
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("...patched %s in %,d ms", file.getPath(), elapsed));
+        return Optional.of(patched);
+    }
+
+    /** Versions of the open files, other than `file`, so we can tell if the user has edited something else */
+    private static Map<URI, Integer> otherVersions(URI file) {
+        var versions = FileStore.versions();
+        versions.remove(file);
+        return versions;
+    }
+
     /** Create a task that compiles a single file */
     static JavacTask singleFileTask(JavaCompilerService parent, URI file, String contents) {
         parent.diags.clear();
+        return singleFileTask(parent, file, contents, parent.diags::add);
+    }
+
+    /** Create a task that compiles a single file, and reports its diagnostics to `onDiagnostic` */
+    static JavacTask singleFileTask(
+            JavaCompilerService parent,
+            URI file,
+            String contents,
+            DiagnosticListener<? super JavaFileObject> onDiagnostic) {
         return (JavacTask)
                 parent.compiler.getTask(
                         null,
                         parent.fileManager,
-                        parent.diags::add,
+                        onDiagnostic,
                         JavaCompilerService.options(parent.classPath),
                         Collections.emptyList(),
                         List.of(new SourceFileObject(file, contents)));
@@ -616,19 +679,8 @@ public class CompileFocus {
 
     private Set<String> subPackages(String parentPackage) {
         var result = new HashSet<String>();
-        Consumer<String> checkClassName =
-                name -> {
-                    var packageName = Parser.mostName(name);
-                    if (packageName.startsWith(parentPackage) && packageName.length() > parentPackage.length()) {
-                        var start = parentPackage.length() + 1;
-                        var end = packageName.indexOf('.', start);
-                        if (end == -1) end = packageName.length();
-                        var prefix = packageName.substring(0, end);
-                        result.add(prefix);
-                    }
-                };
-        for (var name : parent.jdkClasses) checkClassName.accept(name);
-        for (var name : parent.classPathClasses) checkClassName.accept(name);
+        result.addAll(parent.jdkClassNames.subPackages(parentPackage));
+        result.addAll(parent.classPathClassNames.subPackages(parentPackage));
         return result;
     }
 
@@ -659,18 +711,12 @@ public class CompileFocus {
         var startsWithUpperCase = partialName.length() > 0 && Character.isUpperCase(partialName.charAt(0));
         if (startsWithUpperCase) {
             var packageName = Objects.toString(root.getPackageName(), "");
-            Predicate<String> matchesPartialName =
-                    qualifiedName -> {
-                        var className = Parser.lastName(qualifiedName);
-                        return matchesPartialName(className, partialName);
-                    };
 
             // Check JDK
             LOG.info("...checking JDK");
-            for (var c : parent.jdkClasses) {
+            for (var c : parent.jdkClassNames.startingWith(partialName)) {
                 if (tooManyItems(result.size())) return;
-                if (!matchesPartialName.test(c)) continue;
-                if (isSamePackage(c, packageName) || isPublicClassFile(c)) {
+                if (isSamePackage(c, packageName) || isPublic(parent.jdkClassNames, c)) {
                     result.add(Completion.ofClassName(c, isImported(c)));
                 }
             }
@@ -678,10 +724,9 @@ public class CompileFocus {
             // Check classpath
             LOG.info("...checking classpath");
             var classPathNames = new HashSet<String>();
-            for (var c : parent.classPathClasses) {
+            for (var c : parent.classPathClassNames.startingWith(partialName)) {
                 if (tooManyItems(result.size())) return;
-                if (!matchesPartialName.test(c)) continue;
-                if (isSamePackage(c, packageName) || isPublicClassFile(c)) {
+                if (isSamePackage(c, packageName) || isPublic(parent.classPathClassNames, c)) {
                     result.add(Completion.ofClassName(c, isImported(c)));
                     classPathNames.add(c);
                 }
@@ -707,33 +752,13 @@ public class CompileFocus {
         return Parser.mostName(className).equals(fromPackage);
     }
 
-    private boolean isPublicClassFile(String className) {
-        try {
-            var platform =
-                    parent.fileManager.getJavaFileForInput(
-                            StandardLocation.PLATFORM_CLASS_PATH, className, JavaFileObject.Kind.CLASS);
-            if (platform != null) return isPublic(platform);
-            var classpath =
-                    parent.fileManager.getJavaFileForInput(
-                            StandardLocation.CLASS_PATH, className, JavaFileObject.Kind.CLASS);
-            if (classpath != null) return isPublic(classpath);
-            return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private boolean isPublic(JavaFileObject classFile) {
-        try (var in = classFile.openInputStream()) {
-            var header = ClassHeader.of(in);
-            return header.isPublic;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private boolean isPublic(ClassNames names, String className) {
+        var flags = names.accessFlags(className);
+        return flags != -1 && (flags & ClassHeader.ACC_PUBLIC) != 0;
     }
 
     private List<Completion> accessibleClasses(Path file, String partialName, String fromPackage, Set<String> skip) {
-        var parse = Parser.parse(file);
+        var parse = ParseCache.get(file);
         var toPackage = Objects.toString(parse.getPackageName(), "");
         var samePackage = fromPackage.equals(toPackage) || toPackage.isEmpty();
         var result = new ArrayList<Completion>();
@@ -1,26 +1,43 @@
 package org.javacs;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.javacs.lsp.DidChangeTextDocumentParams;
@@ -32,11 +49,24 @@ class FileStore {
 
     private static final Set<Path> workspaceRoots = new HashSet<>();
 
-    private static final Map<URI, VersionedContent> activeDocuments = new HashMap<>();
+    private static final Map<URI, VersionedContent> activeDocuments = new ConcurrentHashMap<>();
+    /** The paths of activeDocuments, updated when a document is opened or closed rather than on every call */
+    private static volatile Set<Path> openFiles = Set.of();
 
-    /** javaSources[file] is the javaSources time of a .java source file. */
-    // TODO organize by package name for speed of list(...)
-    private static final TreeMap<Path, Info> javaSources = new TreeMap<>();
+    /**
+     * javaSources[file] is the javaSources time of a .java source file. javaSources, javaSourcesByPackage and
+     * javaSourcesByName are read concurrently while crawlWorkspace(...) is filling them in on a fork-join pool.
+     */
+    private static final ConcurrentSkipListMap<Path, Info> javaSources = new ConcurrentSkipListMap<>();
+
+    /** javaSourcesByPackage[packageName] is every .java source file that declares packageName, in sorted order */
+    private static final Map<String, Set<Path>> javaSourcesByPackage = new ConcurrentHashMap<>();
+
+    /**
+     * javaSourcesByName[qualifiedName] is every .java source file named after the top-level class qualifiedName, in
+     * sorted order. There can be more than one if several workspace roots contain the same package.
+     */
+    private static final Map<String, Set<Path>> javaSourcesByName = new ConcurrentHashMap<>();
 
     private static class Info {
         final Instant modified;
@@ -49,19 +79,29 @@ class FileStore {
     }
 
     static void setWorkspaceRoots(Set<Path> newRoots) {
+        setWorkspaceRoots(newRoots, ReportProgress.EMPTY).join();
+    }
+
+    /**
+     * Start indexing any new workspace roots in the background. Lookups like list(_) and all() see a partially
+     * populated store until the returned future completes.
+     */
+    static CompletableFuture<Void> setWorkspaceRoots(Set<Path> newRoots, ReportProgress progress) {
         newRoots = normalize(newRoots);
         for (var root : workspaceRoots) {
             if (!newRoots.contains(root)) {
                 workspaceRoots.removeIf(f -> f.startsWith(root));
             }
         }
+        var addRoots = new ArrayList<Path>();
         for (var root : newRoots) {
             if (!workspaceRoots.contains(root)) {
-                addFiles(root);
+                addRoots.add(root);
             }
         }
         workspaceRoots.clear();
         workspaceRoots.addAll(newRoots);
+        return crawlWorkspace(addRoots, Runtime.getRuntime().availableProcessors(), progress);
     }
 
     private static Set<Path> normalize(Set<Path> newRoots) {
@@ -72,26 +112,88 @@ class FileStore {
         return normalize;
     }
 
-    private static void addFiles(Path root) {
-        try {
-            Files.walk(root).filter(FileStore::isJavaFile).forEach(FileStore::readInfoFromDisk);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /** Walk `roots` and read the package name of every .java file, using at most `parallelism` threads */
+    static CompletableFuture<Void> crawlWorkspace(Collection<Path> roots, int parallelism, ReportProgress progress) {
+        if (roots.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        var started = Instant.now();
+        var pool = new ForkJoinPool(parallelism);
+        var count = new AtomicInteger();
+        progress.start("Index workspace");
+        @SuppressWarnings("serial") // Never serialized
+        class Crawl extends RecursiveAction {
+            final Path dir;
+
+            Crawl(Path dir) {
+                this.dir = dir;
+            }
+
+            @Override
+            protected void compute() {
+                var subDirs = new ArrayList<Crawl>();
+                try (var children = Files.newDirectoryStream(dir)) {
+                    for (var child : children) {
+                        // One bad file, for example one deleted while we crawl, shouldn't hide the rest of dir
+                        try {
+                            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                                subDirs.add(new Crawl(child));
+                            } else if (isJavaFile(child)) {
+                                readInfoFromDisk(child);
+                                var n = count.incrementAndGet();
+                                if (n % PROGRESS_INTERVAL == 0) {
+                                    progress.progress(String.format("Indexed %,d files", n), n, -1);
+                                }
+                            }
+                        } catch (RuntimeException e) {
+                            LOG.warning(String.format("Skipped %s because of %s", child, e.getMessage()));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOG.warning(String.format("Skipped %s because of %s", dir, e.getMessage()));
+                }
+                invokeAll(subDirs);
+            }
+        }
+        var crawls = new ArrayList<Crawl>();
+        for (var root : roots) {
+            crawls.add(new Crawl(root));
         }
+        return CompletableFuture.runAsync(() -> ForkJoinTask.invokeAll(crawls), pool)
+                .whenComplete(
+                        (__, err) -> {
+                            pool.shutdown();
+                            // Every file in the snapshot has now been checked, so we don't need it anymore
+                            snapshot = Map.of();
+                            var elapsed = Duration.between(started, Instant.now()).toMillis();
+                            LOG.info(
+                                    String.format(
+                                            "Indexed %,d files in %s using %d threads in %,d ms",
+                                            count.get(), roots, parallelism, elapsed));
+                        });
     }
 
+    /** How many files to index between progress messages */
+    private static final int PROGRESS_INTERVAL = 500;
+
     static Collection<Path> all() {
         return javaSources.keySet();
     }
 
+    /** Every .java source file that declares packageName, in sorted order */
     static List<Path> list(String packageName) {
-        var list = new ArrayList<Path>();
-        for (var kv : javaSources.entrySet()) {
-            var file = kv.getKey();
-            var info = kv.getValue();
-            if (info.packageName.equals(packageName)) list.add(file);
-        }
-        return list;
+        var files = javaSourcesByPackage.get(packageName);
+        if (files == null) return List.of();
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Find the .java source file in packageName whose file name is simpleClassName.java. If there's more than one, the
+     * first in sorted order wins.
+     */
+    static Optional<Path> findDeclaringFile(String packageName, String simpleClassName) {
+        var files = javaSourcesByName.get(qualifiedName(packageName, simpleClassName));
+        if (files == null) return Optional.empty();
+        return files.stream().findFirst();
     }
 
     static boolean contains(Path file) {
@@ -160,24 +262,172 @@ class FileStore {
     }
 
     static void externalDelete(Path file) {
-        javaSources.remove(file);
+        remove(file);
+        WordIndex.remove(file);
+        SymbolIndex.remove(file);
+        ParseCache.remove(file);
+        SourceHeader.remove(file);
     }
 
     private static void readInfoFromDisk(Path file) {
         try {
             var time = Files.getLastModifiedTime(file).toInstant();
+            // If file hasn't changed since the last snapshot, trust the package name we saw last time
+            var cached = snapshot.get(file);
+            if (cached != null && cached.modified.equals(time)) {
+                put(file, cached);
+                return;
+            }
             var packageName = Parser.packageName(file);
-            javaSources.put(file, new Info(time, packageName));
+            put(file, new Info(time, packageName));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /** snapshot[file] is what we knew about file at the end of the last session, according to loadSnapshot(_) */
+    private static volatile Map<Path, Info> snapshot = Map.of();
+
+    private static final int SNAPSHOT_MAGIC = 0x4A415653, SNAPSHOT_VERSION = 1;
+
+    /**
+     * Save the modified time and package name of every source file to `file`. The format is a table of package
+     * names, followed by each directory and the files in it, which is much smaller than a list of absolute paths.
+     */
+    static void saveSnapshot(Path file) {
+        var started = Instant.now();
+        var packages = new ArrayList<String>();
+        var packageIds = new HashMap<String, Integer>();
+        var dirs = new TreeMap<Path, List<Path>>();
+        for (var kv : javaSources.entrySet()) {
+            var source = kv.getKey();
+            var packageName = kv.getValue().packageName;
+            if (!packageIds.containsKey(packageName)) {
+                packageIds.put(packageName, packages.size());
+                packages.add(packageName);
+            }
+            dirs.computeIfAbsent(source.getParent(), __ -> new ArrayList<>()).add(source);
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(packages.size());
+                for (var p : packages) {
+                    out.writeUTF(p);
+                }
+                out.writeInt(dirs.size());
+                for (var dir : dirs.keySet()) {
+                    var sources = dirs.get(dir);
+                    out.writeUTF(dir.toString());
+                    out.writeInt(sources.size());
+                    for (var source : sources) {
+                        var info = javaSources.get(source);
+                        // source may have been deleted while we were writing
+                        if (info == null) info = new Info(Instant.EPOCH, "");
+                        out.writeUTF(source.getFileName().toString());
+                        out.writeLong(info.modified.getEpochSecond());
+                        out.writeInt(info.modified.getNano());
+                        out.writeInt(packageIds.getOrDefault(info.packageName, 0));
+                    }
+                }
+            }
+            // Replace the old snapshot all at once, so a crash never leaves a half-written file
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save snapshot to " + file, e);
+            return;
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("Saved %,d files to %s in %,d ms", javaSources.size(), file, elapsed));
+    }
+
+    /**
+     * Load a snapshot written by saveSnapshot(_). The next crawl will still check the modified time of every file,
+     * but it won't read files that haven't changed.
+     */
+    static void loadSnapshot(Path file) {
+        if (!Files.exists(file)) return;
+        var loaded = new HashMap<Path, Info>();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                LOG.warning(String.format("Ignored snapshot %s in an unknown format", file));
+                return;
+            }
+            var packages = new String[in.readInt()];
+            for (var i = 0; i < packages.length; i++) {
+                packages[i] = in.readUTF();
+            }
+            var dirCount = in.readInt();
+            for (var i = 0; i < dirCount; i++) {
+                var dir = Paths.get(in.readUTF());
+                var fileCount = in.readInt();
+                for (var j = 0; j < fileCount; j++) {
+                    var source = dir.resolve(in.readUTF());
+                    var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                    var packageName = packages[in.readInt()];
+                    loaded.put(source, new Info(modified, packageName));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Failed to load snapshot from " + file, e);
+            return;
+        }
+        snapshot = loaded;
+        LOG.info(String.format("Loaded %,d files from %s", loaded.size(), file));
+    }
+
+    /** Incremented every time a file is added, changed or removed, so indexes can tell when they need to catch up */
+    private static volatile long changes;
+
+    static long changes() {
+        return changes;
+    }
+
+    private static synchronized void put(Path file, Info info) {
+        // The package declaration may have changed, so forget where we filed file last time
+        remove(file);
+        javaSources.put(file, info);
+        changes++;
+        javaSourcesByPackage.computeIfAbsent(info.packageName, __ -> new ConcurrentSkipListSet<>()).add(file);
+        javaSourcesByName
+                .computeIfAbsent(qualifiedName(info.packageName, className(file)), __ -> new ConcurrentSkipListSet<>())
+                .add(file);
+    }
+
+    private static synchronized void remove(Path file) {
+        var info = javaSources.remove(file);
+        if (info == null) return;
+        changes++;
+        removeFrom(javaSourcesByPackage, info.packageName, file);
+        removeFrom(javaSourcesByName, qualifiedName(info.packageName, className(file)), file);
+    }
+
+    private static void removeFrom(Map<String, Set<Path>> index, String key, Path file) {
+        var files = index.get(key);
+        if (files == null) return;
+        files.remove(file);
+        if (files.isEmpty()) index.remove(key);
+    }
+
+    private static String className(Path file) {
+        var name = file.getFileName().toString();
+        return name.substring(0, name.length() - ".java".length());
+    }
+
+    private static String qualifiedName(String packageName, String className) {
+        if (packageName.isEmpty()) return className;
+        return packageName + "." + className;
+    }
+
     static void open(DidOpenTextDocumentParams params) {
         var document = params.textDocument;
         var uri = document.uri;
         if (!isJavaFile(uri)) return;
-        activeDocuments.put(uri, new VersionedContent(document.text, document.version));
+        activeDocuments.put(uri, new VersionedContent(new PieceTable(document.text), document.version));
+        updateOpenFiles();
     }
 
     static void change(DidChangeTextDocumentParams params) {
@@ -189,7 +439,7 @@ class FileStore {
 
             if (document.version > existing.version) {
                 for (var change : params.contentChanges) {
-                    if (change.range == null) newText = change.text;
+                    if (change.range == null) newText = new PieceTable(change.text);
                     else newText = patch(newText, change);
                 }
 
@@ -204,13 +454,40 @@ class FileStore {
         if (isJavaFile(uri)) {
             // Remove from source cache
             activeDocuments.remove(uri);
+            updateOpenFiles();
         }
     }
 
+    private static void updateOpenFiles() {
+        var paths = new HashSet<Path>();
+        for (var uri : activeDocuments.keySet()) {
+            paths.add(Paths.get(uri));
+        }
+        openFiles = Collections.unmodifiableSet(paths);
+    }
+
     static Set<URI> activeDocuments() {
         return activeDocuments.keySet();
     }
 
+    /** The paths of all documents that are open in the editor */
+    static Set<Path> openFiles() {
+        return openFiles;
+    }
+
+    static boolean isOpen(Path file) {
+        return openFiles.contains(file);
+    }
+
+    /** The version of every document that is open in the editor */
+    static Map<URI, Integer> versions() {
+        var versions = new HashMap<URI, Integer>();
+        for (var entry : activeDocuments.entrySet()) {
+            versions.put(entry.getKey(), entry.getValue().version);
+        }
+        return versions;
+    }
+
     static int version(URI file) {
         if (!activeDocuments.containsKey(file)) return -1;
         return activeDocuments.get(file).version;
@@ -221,7 +498,7 @@ class FileStore {
             throw new RuntimeException(file + " is not a java file");
         }
         if (activeDocuments.containsKey(file)) {
-            return activeDocuments.get(file).content;
+            return activeDocuments.get(file).content.toString();
         }
         try {
             // TODO I think there is a faster path here
@@ -235,10 +512,18 @@ class FileStore {
         return contents(file.toUri());
     }
 
+    /** Line starts of the current version of file, which are cached for open documents */
+    static LineIndex lines(URI file) {
+        if (activeDocuments.containsKey(file)) {
+            return activeDocuments.get(file).lines();
+        }
+        return new LineIndex(contents(file));
+    }
+
     static InputStream inputStream(Path file) {
         var uri = file.toUri();
         if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
+            var string = activeDocuments.get(uri).content.toString();
             var bytes = string.getBytes();
             return new ByteArrayInputStream(bytes);
         }
@@ -252,7 +537,7 @@ class FileStore {
     static BufferedReader bufferedReader(Path file) {
         var uri = file.toUri();
         if (activeDocuments.containsKey(uri)) {
-            var string = activeDocuments.get(uri).content;
+            var string = activeDocuments.get(uri).content.toString();
             return new BufferedReader(new StringReader(string));
         }
         try {
@@ -262,47 +547,10 @@ class FileStore {
         }
     }
 
-    static BufferedReader lines(Path file) {
-        try {
-            return Files.newBufferedReader(file);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String patch(String sourceText, TextDocumentContentChangeEvent change) {
-        try {
-            var range = change.range;
-            var reader = new BufferedReader(new StringReader(sourceText));
-            var writer = new StringWriter();
-
-            // Skip unchanged lines
-            int line = 0;
-
-            while (line < range.start.line) {
-                writer.write(reader.readLine() + '\n');
-                line++;
-            }
-
-            // Skip unchanged chars
-            for (int character = 0; character < range.start.character; character++) writer.write(reader.read());
-
-            // Write replacement text
-            writer.write(change.text);
-
-            // Skip replaced text
-            reader.skip(change.rangeLength);
-
-            // Write remaining text
-            while (true) {
-                int next = reader.read();
-
-                if (next == -1) return writer.toString();
-                else writer.write(next);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private static PieceTable patch(PieceTable sourceText, TextDocumentContentChangeEvent change) {
+        var start = change.range.start;
+        var end = change.range.end;
+        return sourceText.replace(start.line, start.character, end.line, end.character, change.text);
     }
 
     static boolean isJavaFile(Path file) {
@@ -0,0 +1,244 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.comp.Attr;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCBlock;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
+import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCErroneous;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.tree.TreeScanner;
+import com.sun.tools.javac.util.Log;
+import com.sun.tools.javac.util.Position;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.JavaFileObject;
+
+/**
+ * Swaps the body of one method in a compilation unit that has already been attributed, and re-attributes the class
+ * that declares it, without creating a new JavacTask. Everything else in the task stays warm: the symbols of the
+ * other classes in the file, and every class that was loaded from the class path or source path.
+ *
+ * <p>This only works if the new contents differ from the old ones inside the body of a single method, which is
+ * declared directly in a top-level or member class. Pruner erases every other method body, so re-attributing the
+ * class costs about as much as re-attributing the method.
+ */
+class FocusPatch {
+    /** A method declared directly in a top-level or member class, and that class */
+    private static class Target {
+        final JCClassDecl owner;
+        final JCMethodDecl method;
+
+        Target(JCClassDecl owner, JCMethodDecl method) {
+            this.owner = owner;
+            this.method = method;
+        }
+    }
+
+    /**
+     * Patch `unit`, which was compiled from `oldContents` by `task`, so it looks as if it was compiled from
+     * `newFile`. Returns false, without modifying anything, if the edit isn't confined to the method that contains
+     * line:character.
+     */
+    static boolean apply(
+            JavacTask task,
+            CompilationUnitTree unit,
+            String oldContents,
+            JavaFileObject newFile,
+            String newContents,
+            int line,
+            int character) {
+        var root = (JCCompilationUnit) unit;
+        var context = ((BasicJavacTask) task).getContext();
+        var log = Log.instance(context);
+        JCCompilationUnit newRoot;
+        var previous = log.useSource(newFile);
+        try {
+            var parser = ParserFactory.instance(context).newParser(newContents, false, true, true);
+            newRoot = parser.parseCompilationUnit();
+        } finally {
+            log.useSource(previous);
+        }
+
+        // Find the method that contains the cursor, before and after the edit
+        var cursor = newRoot.getLineMap().getPosition(line, character);
+        var after = find(newRoot, cursor);
+        if (after == null) return false;
+        var newBody = after.method.body;
+        var before = find(root, newBody.pos + 1);
+        if (before == null) return false;
+        var oldBody = before.method.body;
+        if (oldBody.pos != newBody.pos
+                || !before.method.name.contentEquals(after.method.name)
+                || !before.owner.name.contentEquals(after.owner.name)) return false;
+
+        // Check that nothing outside the method body has changed
+        var oldEnd = TreeInfo.getEndPos(oldBody, root.endPositions);
+        var newEnd = TreeInfo.getEndPos(newBody, newRoot.endPositions);
+        var suffix = oldContents.length() - oldEnd;
+        if (suffix != newContents.length() - newEnd
+                || !oldContents.regionMatches(0, newContents, 0, oldBody.pos)
+                || !oldContents.regionMatches(oldEnd, newContents, newEnd, suffix)) return false;
+        // Attr re-enters anonymous and local classes it finds outside of method bodies, which would redefine them
+        if (hasClassBodies(before.owner)) return false;
+
+        // Shift everything after the method body, and swap in the new one
+        var delta = newEnd - oldEnd;
+        shift(root, oldBody, oldEnd, delta);
+        root.endPositions = new PatchedEndPositions(root.endPositions, newBody, newRoot.endPositions, oldEnd, delta);
+        root.lineMap = newRoot.lineMap;
+        var oldFile = root.sourcefile;
+        root.sourcefile = newFile;
+        new TreeScanner() {
+            @Override
+            public void visitClassDef(JCClassDecl tree) {
+                if (tree.sym != null && tree.sym.sourcefile == oldFile) tree.sym.sourcefile = newFile;
+                super.visitClassDef(tree);
+            }
+        }.scan(root);
+        before.method.body = newBody;
+
+        // Re-attribute the class that declares the method; member classes are already attributed, so Attr skips them
+        var owner = before.owner.sym;
+        owner.flags_field |= Flags.UNATTRIBUTED;
+        Attr.instance(context).attribClass(before.method.pos(), owner);
+        return true;
+    }
+
+    private static Target find(JCCompilationUnit root, long offset) {
+        for (var def : root.defs) {
+            if (def instanceof JCClassDecl && contains(root, def, offset)) {
+                return find(root, (JCClassDecl) def, offset);
+            }
+        }
+        return null;
+    }
+
+    private static Target find(JCCompilationUnit root, JCClassDecl owner, long offset) {
+        for (var def : owner.defs) {
+            if (!contains(root, def, offset)) continue;
+            if (def instanceof JCClassDecl) {
+                return find(root, (JCClassDecl) def, offset);
+            }
+            if (def instanceof JCMethodDecl) {
+                var method = (JCMethodDecl) def;
+                // The cursor has to be between the braces
+                if (method.body != null
+                        && method.body.pos < offset
+                        && offset < TreeInfo.getEndPos(method.body, root.endPositions)) {
+                    return new Target(owner, method);
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+
+    private static boolean contains(JCCompilationUnit root, JCTree tree, long offset) {
+        return TreeInfo.getStartPos(tree) <= offset && offset <= TreeInfo.getEndPos(tree, root.endPositions);
+    }
+
+    private static boolean hasClassBodies(JCClassDecl owner) {
+        class Scan extends TreeScanner {
+            boolean found = false;
+
+            @Override
+            public void visitClassDef(JCClassDecl tree) {
+                found = true;
+            }
+        }
+        var scan = new Scan();
+        for (var def : owner.defs) {
+            if (def instanceof JCClassDecl || def instanceof JCMethodDecl) continue;
+            scan.scan(def);
+        }
+        return scan.found;
+    }
+
+    /** Move every tree that starts after `end` by `delta` */
+    private static void shift(JCCompilationUnit root, JCBlock skip, int end, int delta) {
+        // Declarations like `int a, b;` share one type tree, so we have to be careful to only move each tree once
+        Set<JCTree> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        new TreeScanner() {
+            @Override
+            public void scan(JCTree tree) {
+                if (tree == null || tree == skip || !visited.add(tree)) return;
+                if (tree.pos >= end) tree.pos += delta;
+                super.scan(tree);
+            }
+
+            @Override
+            public void visitBlock(JCBlock tree) {
+                if (tree.endpos >= end) tree.endpos += delta;
+                super.visitBlock(tree);
+            }
+
+            @Override
+            public void visitErroneous(JCErroneous tree) {
+                scan(tree.errs);
+            }
+        }.scan(root);
+    }
+
+    /**
+     * End positions of the trees in the new method body, and of every other tree, shifted by the change in the
+     * length of the body. Each patch wraps the table of the previous one.
+     */
+    private static class PatchedEndPositions implements EndPosTable {
+        final EndPosTable previous;
+        final Map<JCTree, Integer> body = new HashMap<>();
+        final int end, delta;
+
+        PatchedEndPositions(EndPosTable previous, JCBlock newBody, EndPosTable newPositions, int end, int delta) {
+            this.previous = previous;
+            this.end = end;
+            this.delta = delta;
+            // Copy what we need from the new table, so we don't keep the rest of the new tree alive
+            new TreeScanner() {
+                @Override
+                public void scan(JCTree tree) {
+                    if (tree == null) return;
+                    var pos = newPositions.getEndPos(tree);
+                    if (pos != Position.NOPOS) body.put(tree, pos);
+                    super.scan(tree);
+                }
+
+                @Override
+                public void visitErroneous(JCErroneous tree) {
+                    // TreeScanner doesn't look inside syntax errors, but the user is usually in the middle of one
+                    scan(tree.errs);
+                }
+            }.scan(newBody);
+        }
+
+        @Override
+        public int getEndPos(JCTree tree) {
+            var found = body.get(tree);
+            if (found != null) return found;
+            var pos = previous.getEndPos(tree);
+            return pos >= end ? pos + delta : pos;
+        }
+
+        @Override
+        public void storeEnd(JCTree tree, int endpos) {
+            body.put(tree, endpos);
+        }
+
+        @Override
+        public int replaceTree(JCTree oldTree, JCTree newTree) {
+            var pos = getEndPos(oldTree);
+            if (pos != Position.NOPOS) body.put(newTree, pos);
+            return pos;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.javacs;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * For each simple class name, the qualified names it could be imported as. Classes in the JDK and on the class path
+ * never change, so each ImportIndex indexes them once. The imports and top-level classes of workspace files are shared
+ * by all instances, and are kept up to date incrementally: only files whose header has changed are re-indexed.
+ */
+class ImportIndex {
+    /** JDK and class path classes, by simple name */
+    private final Map<String, List<String>> classPath = new HashMap<>();
+
+    ImportIndex(Set<String> jdkClasses, Set<String> classPathClasses) {
+        for (var c : jdkClasses) add(classPath, c);
+        for (var c : classPathClasses) add(classPath, c);
+    }
+
+    private static void add(Map<String, List<String>> index, String qualifiedName) {
+        index.computeIfAbsent(Parser.lastName(qualifiedName), __ -> new ArrayList<>()).add(qualifiedName);
+    }
+
+    private static class Entry {
+        final SourceHeader header;
+        /** The qualified name of the class this file declares, judging by its name and package */
+        final String declared;
+
+        Entry(SourceHeader header, String declared) {
+            this.header = header;
+            this.declared = declared;
+        }
+    }
+
+    private static final Map<Path, Entry> files = new HashMap<>();
+    /** How many workspace files import each class, by simple name */
+    private static final Map<String, Map<String, Integer>> imported = new HashMap<>();
+    /** How many workspace files import each package, by a class import like a.b.C or a star import like a.b.* */
+    private static final Map<String, Integer> importedPackages = new HashMap<>();
+    /** How many workspace files declare each class, by simple name */
+    private static final Map<String, Map<String, Integer>> declared = new HashMap<>();
+
+    private static long lastChanges = -1;
+    private static Set<Path> lastOpen = Set.of();
+
+    /** Re-index workspace files whose imports or package may have changed since we last looked */
+    private static void update() {
+        var started = Instant.now();
+        var open = FileStore.openFiles();
+        var check = new HashSet<Path>();
+        // If nothing has been created, deleted or modified on disk, only open files can have changed
+        if (FileStore.changes() != lastChanges) {
+            lastChanges = FileStore.changes();
+            check.addAll(FileStore.all());
+            for (var file : new ArrayList<Path>(files.keySet())) {
+                if (!check.contains(file)) remove(file);
+            }
+        } else {
+            check.addAll(open);
+            // Files that were closed have reverted to their contents on disk
+            check.addAll(lastOpen);
+        }
+        lastOpen = open;
+        var count = 0;
+        for (var file : check) {
+            try {
+                var header = SourceHeader.of(file);
+                var existing = files.get(file);
+                if (existing != null && existing.header == header) continue;
+                remove(file);
+                put(file, header);
+                count++;
+            } catch (RuntimeException e) {
+                // file was probably deleted after we listed it
+                LOG.log(Level.WARNING, "Failed to index imports in " + file, e);
+                remove(file);
+            }
+        }
+        if (count > 0) {
+            var elapsed = Duration.between(started, Instant.now()).toMillis();
+            LOG.info(String.format("...indexed imports in %,d files in %,d ms", count, elapsed));
+        }
+    }
+
+    private static void put(Path file, SourceHeader header) {
+        var fileName = file.getFileName().toString();
+        var className = fileName.substring(0, fileName.length() - ".java".length());
+        var qualifiedName = header.packageName.isEmpty() ? className : header.packageName + "." + className;
+        files.put(file, new Entry(header, qualifiedName));
+        count(declared, qualifiedName, +1);
+        for (var i : header.imports) countImport(i, +1);
+    }
+
+    private static void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        count(declared, existing.declared, -1);
+        for (var i : existing.header.imports) countImport(i, -1);
+    }
+
+    private static void countImport(String qualifiedName, int delta) {
+        if (!qualifiedName.contains(".")) return;
+        importedPackages.merge(Parser.mostName(qualifiedName), delta, ImportIndex::sum);
+        if (!qualifiedName.endsWith(".*")) count(imported, qualifiedName, delta);
+    }
+
+    private static void count(Map<String, Map<String, Integer>> index, String qualifiedName, int delta) {
+        var simpleName = Parser.lastName(qualifiedName);
+        var counts = index.computeIfAbsent(simpleName, __ -> new HashMap<>());
+        counts.merge(qualifiedName, delta, ImportIndex::sum);
+        if (counts.isEmpty()) index.remove(simpleName);
+    }
+
+    /** Add counts, returning null when they reach 0 so Map.merge removes the entry */
+    private static Integer sum(Integer a, Integer b) {
+        var total = a + b;
+        return total == 0 ? null : total;
+    }
+
+    /** For each of `unresolved`, the qualified name we should import, if we can figure it out */
+    Map<String, String> resolve(Set<String> unresolved) {
+        synchronized (ImportIndex.class) {
+            update();
+            var result = new HashMap<String, String>();
+            for (var name : unresolved) {
+                resolve(name).ifPresent(resolved -> result.put(name, resolved));
+            }
+            return result;
+        }
+    }
+
+    private Optional<String> resolve(String unresolved) {
+        // Try to disambiguate by looking for exact matches
+        // For example, Foo is exactly matched by `import com.bar.Foo`
+        // Foo is *not* exactly matched by `import com.bar.*`
+        var candidates = imported.getOrDefault(unresolved, Map.of()).keySet();
+        if (candidates.size() > 1) {
+            LOG.warning(
+                    String.format("%s is ambiguous between previously imported candidates %s", unresolved, candidates));
+            return Optional.empty();
+        } else if (candidates.size() == 1) {
+            return Optional.of(candidates.iterator().next());
+        }
+
+        // Classes with this name in the JDK, on the class path, or in the workspace
+        var all = new HashSet<String>(classPath.getOrDefault(unresolved, List.of()));
+        all.addAll(declared.getOrDefault(unresolved, Map.of()).keySet());
+
+        // Try to disambiguate by looking at package names
+        // Both normal imports like `import com.bar.Foo`, and star-imports like `import com.bar.*`,
+        // are used to generate package names
+        var inImportedPackage = new HashSet<String>();
+        for (var c : all) {
+            if (importedPackages.containsKey(Parser.mostName(c))) inImportedPackage.add(c);
+        }
+        if (inImportedPackage.size() > 1) {
+            LOG.warning(
+                    String.format("%s is ambiguous between package-based candidates %s", unresolved, inImportedPackage));
+            return Optional.empty();
+        } else if (inImportedPackage.size() == 1) {
+            return Optional.of(inImportedPackage.iterator().next());
+        }
+
+        // If there is only one class with this name, use it
+        if (all.size() > 1) {
+            LOG.warning(String.format("%s is ambiguous between classpath candidates %s", unresolved, all));
+        } else if (all.size() == 1) {
+            return Optional.of(all.iterator().next());
+        } else {
+            LOG.warning(unresolved + " does not appear on the classpath");
+        }
+
+        // Try to import from java stdlib
+        Comparator<String> order =
+                Comparator.comparing(
+                        c -> {
+                            if (c.startsWith("java.lang")) return 1;
+                            else if (c.startsWith("java.util")) return 2;
+                            else if (c.startsWith("java.io")) return 3;
+                            else return 4;
+                        });
+        return all.stream().filter(c -> c.startsWith("java.")).sorted(order).findFirst();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -7,6 +7,10 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.lang.model.element.*;
@@ -18,12 +22,19 @@ public class JavaCompilerService {
     final Set<Path> classPath, docPath;
     final JavaCompiler compiler = ServiceLoader.load(JavaCompiler.class).iterator().next();
     final Docs docs;
-    final Set<String> jdkClasses = Classes.jdkTopLevelClasses(), classPathClasses;
+    final Set<String> jdkClasses, classPathClasses;
+    final ClassNames jdkClassNames, classPathClassNames;
+    final ImportIndex importIndex;
     // Diagnostics from the last compilation task
     final List<Diagnostic<? extends JavaFileObject>> diags = new ArrayList<>();
     // Use the same file manager for multiple tasks, so we don't repeatedly re-compile the same files
-    // TODO intercept files that aren't in the batch and erase method bodies so compilation is faster
     final SourceFileManager fileManager;
+    // A separate file manager for lint(_), which runs in the background while fileManager is in use
+    private final SourceFileManager lintFileManager = new SourceFileManager();
+    // Recent CompileFiles, which hover, goto definition, find references and code lens share
+    final CompileCache compileCache = new CompileCache(this);
+    // The last CompileFocus, which we patch instead of starting over while the user is typing in the same method
+    private CompileFocus lastFocus;
 
     public JavaCompilerService(Set<Path> classPath, Set<Path> docPath) {
         System.err.println("Class path:");
@@ -38,7 +49,13 @@ public class JavaCompilerService {
         this.classPath = Collections.unmodifiableSet(classPath);
         this.docPath = Collections.unmodifiableSet(docPath);
         this.docs = new Docs(docPath);
-        this.classPathClasses = Classes.classPathTopLevelClasses(classPath);
+        var jdk = Classes.jdkTopLevelClasses();
+        var classPathTopLevel = Classes.classPathTopLevelClasses(classPath);
+        this.jdkClasses = jdk.keySet();
+        this.classPathClasses = classPathTopLevel.keySet();
+        this.jdkClassNames = new ClassNames(jdk);
+        this.classPathClassNames = new ClassNames(classPathTopLevel);
+        this.importIndex = new ImportIndex(jdkClasses, classPathClasses);
         this.fileManager = new SourceFileManager();
         ;
     }
@@ -80,12 +97,26 @@ public class JavaCompilerService {
         return new ParseFile(this, file);
     }
 
-    public CompileFocus compileFocus(URI file, int line, int character) {
-        return new CompileFocus(this, file, line, character);
+    public synchronized CompileFocus compileFocus(URI file, int line, int character) {
+        var contents = Pruner.prune(file, line, character);
+        if (lastFocus != null) {
+            try {
+                var patched = lastFocus.patch(file, contents, line, character);
+                if (patched.isPresent()) {
+                    lastFocus = patched.get();
+                    return lastFocus;
+                }
+            } catch (RuntimeException e) {
+                // The old task may be half-patched, so we can't use it again
+                LOG.log(Level.WARNING, "Failed to patch " + file, e);
+            }
+        }
+        lastFocus = new CompileFocus(this, file, contents, line, character);
+        return lastFocus;
     }
 
     public CompileFile compileFile(URI file) {
-        return new CompileFile(this, file);
+        return compileCache.get(file);
     }
 
     public CompileBatch compileBatch(Collection<URI> uris) {
@@ -106,61 +137,135 @@ public class JavaCompilerService {
     }
 
     public List<Diagnostic<? extends JavaFileObject>> reportErrors(Collection<URI> uris) {
+        var all = Collections.synchronizedList(new ArrayList<Diagnostic<? extends JavaFileObject>>());
+        reportErrors(uris, (files, found) -> all.addAll(found));
+        return Collections.unmodifiableList(new ArrayList<>(all));
+    }
+
+    interface ReportDiagnostics {
+        /** Report `diagnostics` in `files`. Called from a worker thread. */
+        void report(Collection<URI> files, List<Diagnostic<? extends JavaFileObject>> diagnostics);
+    }
+
+    /**
+     * Report errors in `uris`, split into shards that compile in parallel, each in its own javac task. `report` is
+     * called for each file as soon as javac has analyzed it, and reportErrors(_, _) returns once every file has been
+     * reported.
+     */
+    public void reportErrors(Collection<URI> uris, ReportDiagnostics report) {
+        reportErrors(uris, report, () -> false);
+    }
+
+    /**
+     * Like reportErrors(_, _), but gives up with CancellationException as soon as `cancelled` returns true. Like
+     * lint(_, _, _), this is safe to call from a background thread.
+     */
+    public void reportErrors(Collection<URI> uris, ReportDiagnostics report, BooleanSupplier cancelled) {
         LOG.info(String.format("Report errors in %d files...", uris.size()));
 
-        // Construct list of sources
-        var files = new ArrayList<File>();
+        var files = new ArrayList<URI>();
         for (var uri : uris) {
             if (FileStore.isJavaFile(uri)) {
-                files.add(new File(uri));
+                files.add(uri);
             }
         }
-        if (files.isEmpty()) return List.of();
-        // TODO should get current contents of open files from FileStore
-        var sources = fileManager.getJavaFileObjectsFromFiles(files);
+        if (files.isEmpty()) return;
+
+        var shards = shards(files, Runtime.getRuntime().availableProcessors());
+        LOG.info(String.format("...in %d shards", shards.size()));
+        if (shards.size() == 1) {
+            reportShard(shards.get(0), report, cancelled);
+            return;
+        }
+        pool.submit(() -> shards.parallelStream().forEach(shard -> reportShard(shard, report, cancelled))).join();
+    }
+
+    /** Files in the same package often use each other, so we keep them together to avoid parsing them twice */
+    static List<List<URI>> shards(List<URI> files, int maxShards) {
+        var sorted = new ArrayList<URI>(files);
+        sorted.sort(Comparator.comparing((URI uri) -> Paths.get(uri).getParent()).thenComparing(uri -> uri));
+        var count = Math.max(1, Math.min(maxShards, sorted.size() / MIN_SHARD_SIZE));
+        var shards = new ArrayList<List<URI>>();
+        for (var i = 0; i < count; i++) {
+            var start = i * sorted.size() / count;
+            var end = (i + 1) * sorted.size() / count;
+            shards.add(sorted.subList(start, end));
+        }
+        return shards;
+    }
+
+    /**
+     * Every shard re-reads the signatures of the sources its files depend on, so there's no point splitting a batch
+     * into shards smaller than this
+     */
+    private static final int MIN_SHARD_SIZE = 4;
+
+    private void reportShard(List<URI> shard, ReportDiagnostics report, BooleanSupplier cancelled) {
+        // Each shard has its own file manager, because SourceFileManager caches class path lookups
+        var shardFileManager = new SourceFileManager();
+        var files = new ArrayList<File>();
+        for (var uri : shard) files.add(new File(uri));
+        var sources = shardFileManager.getJavaFileObjectsFromFiles(files);
+        try {
+            check(shardFileManager, sources, report, cancelled);
+        } catch (RuntimeException e) {
+            // javac wraps exceptions from listeners
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            throw e;
+        } finally {
+            try {
+                shardFileManager.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to close file manager", e);
+            }
+        }
+    }
 
+    /**
+     * Report errors in one version of `file`, which may have been edited since. Unlike reportErrors(_), this is safe to
+     * call from a background thread, and gives up with CancellationException as soon as `cancelled` returns true.
+     */
+    public List<Diagnostic<? extends JavaFileObject>> lint(URI file, String contents, BooleanSupplier cancelled) {
+        LOG.info(String.format("Lint %s...", file.getPath()));
+        var sources = List.of(new SourceFileObject(file, contents));
+        var found = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        // lintFileManager caches class path lookups, so only one lint can use it at a time
+        synchronized (lintFileManager) {
+            try {
+                check(lintFileManager, sources, (files, diags) -> found.addAll(diags), cancelled);
+            } catch (RuntimeException e) {
+                // javac wraps exceptions from listeners
+                if (cancelled.getAsBoolean()) throw new CancellationException();
+                throw e;
+            }
+        }
+        return found;
+    }
+
+    private void check(
+            JavaFileManager fileManager,
+            Iterable<? extends JavaFileObject> sources,
+            ReportDiagnostics report,
+            BooleanSupplier cancelled) {
         // Create task
         var options = options(classPath);
+        var diags = new ArrayList<Diagnostic<? extends JavaFileObject>>();
         var task =
                 (JavacTask) compiler.getTask(null, fileManager, diags::add, options, Collections.emptyList(), sources);
-        var trees = Trees.instance(task);
 
         // Print timing information for optimization
         var profiler = new Profiler();
         task.addTaskListener(profiler);
+        task.addTaskListener(new Cancellation(cancelled));
 
-        // Run compilation
-        diags.clear();
-        Iterable<? extends CompilationUnitTree> roots;
+        // Run compilation, reporting each file as soon as it's analyzed
         try {
-            roots = task.parse();
-            task.analyze();
+            new ReportAnalyzed(task, diags, report).run();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         profiler.print();
         LOG.info(String.format("...found %d errors", diags.size()));
-
-        // Check for unused privates
-        for (var r : roots) {
-            var warnUnused = new WarnUnused(task);
-            warnUnused.scan(r, null);
-            for (var unusedEl : warnUnused.notUsed()) {
-                var path = trees.getPath(unusedEl);
-                var message = String.format("`%s` is not used", unusedEl.getSimpleName());
-                Diagnostic.Kind kind;
-                if (unusedEl instanceof ExecutableElement || unusedEl instanceof TypeElement) {
-                    kind = Diagnostic.Kind.OTHER;
-                } else {
-                    kind = Diagnostic.Kind.WARNING;
-                }
-                diags.add(new Warning(task, path, kind, "unused", message));
-            }
-        }
-        // TODO hint fields that could be final
-        // TODO hint unused exception
-
-        return Collections.unmodifiableList(new ArrayList<>(diags));
     }
 
     public Set<URI> potentialDefinitions(Element to) {
@@ -177,7 +282,6 @@ public class JavaCompilerService {
         if (to instanceof ExecutableElement) {
             var allFiles = possibleFiles(to);
 
-            // TODO this needs to use open text if available
             // Check if the file contains the name of `to`
             var hasWord = containsWord(allFiles, to);
             // Parse each file and check if the syntax tree is consistent with a definition of `to`
@@ -198,7 +302,7 @@ public class JavaCompilerService {
                 }
             }
             for (var f : hasWord) {
-                var root = Parser.parse(f);
+                var root = ParseCache.get(f);
                 new FindMethod().scan(root, null);
             }
             LOG.info(String.format("...%d files contain method `%s`", checkTree.size(), findName));
@@ -211,6 +315,14 @@ public class JavaCompilerService {
     }
 
     public Set<URI> potentialReferences(Element to) {
+        return potentialReferences(to, Map.of());
+    }
+
+    /**
+     * Like potentialReferences(_), but containing[name] is the files that contain the word name, if the caller has
+     * already looked it up with filesContainingNames(_)
+     */
+    public Set<URI> potentialReferences(Element to, Map<String, List<Path>> containing) {
         LOG.info(String.format("Find potential references to `%s`...", to));
 
         // If `to` is private, any definitions must be in the same file
@@ -256,7 +368,7 @@ public class JavaCompilerService {
                     return super.visitMemberSelect(t, found);
                 }
             }
-            return scanForPotentialReferences(to, new FindVar());
+            return scanForPotentialReferences(to, new FindVar(), containing);
         } else if (to instanceof ExecutableElement) {
             LOG.info(String.format("...find method calls named `%s`", findName));
             class FindMethod extends TreePathScanner<Void, Set<URI>> {
@@ -300,7 +412,7 @@ public class JavaCompilerService {
                     return super.visitNewClass(t, found);
                 }
             }
-            return scanForPotentialReferences(to, new FindMethod());
+            return scanForPotentialReferences(to, new FindMethod(), containing);
         } else {
             // Fields, type parameters can only be referenced from within the same file
             LOG.info(String.format("...references to `%s` must be in the same file", to));
@@ -334,12 +446,12 @@ public class JavaCompilerService {
         return !to.getModifiers().contains(Modifier.PROTECTED) && !to.getModifiers().contains(Modifier.PUBLIC);
     }
 
-    private Set<URI> scanForPotentialReferences(Element to, TreePathScanner<Void, Set<URI>> scan) {
+    private Set<URI> scanForPotentialReferences(
+            Element to, TreePathScanner<Void, Set<URI>> scan, Map<String, List<Path>> containing) {
         var allFiles = possibleFiles(to);
 
-        // TODO this needs to use open text if available
         // Check if the file contains the name of `to`
-        var hasWord = containsWord(allFiles, to);
+        var hasWord = containsWord(allFiles, to, containing);
 
         // You can't reference a TypeElement without importing it
         if (to instanceof TypeElement) {
@@ -351,7 +463,7 @@ public class JavaCompilerService {
         // so it's an effective optimization
         var found = new HashSet<URI>();
         for (var f : hasWord) {
-            var root = Parser.parse(f);
+            var root = ParseCache.get(f);
             scan.scan(root, found);
         }
         LOG.info(String.format("...%d files contain matching syntax", found.size()));
@@ -415,42 +527,45 @@ public class JavaCompilerService {
         return allFiles;
     }
 
-    private static Cache<String, Boolean> cacheContainsWord = new Cache<>();
-
     private List<Path> containsWord(Collection<Path> allFiles, Element to) {
+        return containsWord(allFiles, to, Map.of());
+    }
+
+    private List<Path> containsWord(Collection<Path> allFiles, Element to, Map<String, List<Path>> containing) {
         // Figure out what name we're looking for
-        var name = to.getSimpleName().toString();
-        if (name.equals("<init>")) name = to.getEnclosingElement().getSimpleName().toString();
+        var name = simpleName(to).toString();
         if (!name.matches("\\w*")) throw new RuntimeException(String.format("`%s` is not a word", name));
 
-        // Figure out all files that need to be re-scanned
-        var outOfDate = new ArrayList<Path>();
-        for (var file : allFiles) {
-            if (cacheContainsWord.needs(file, name)) {
-                outOfDate.add(file);
-            }
-        }
-
-        // Update those files in cacheContainsWord
-        LOG.info(String.format("...scanning %d out-of-date files for the word `%s`", outOfDate.size(), name));
-        for (var file : outOfDate) {
-            // TODO this needs to use open text if available
-            var found = Parser.containsWord(file, name);
-            cacheContainsWord.load(file, name, found);
-        }
-
-        // Assemble list of all files that contain name
-        var hasWord = new ArrayList<Path>();
-        for (var file : allFiles) {
-            if (cacheContainsWord.get(file, name)) {
-                hasWord.add(file);
+        List<Path> hasWord;
+        if (containing.containsKey(name)) {
+            // The caller looked up every file in the workspace, so leave out the ones `to` can't be referenced from
+            var possible = new HashSet<Path>(allFiles);
+            hasWord = new ArrayList<Path>();
+            for (var file : containing.get(name)) {
+                if (possible.contains(file)) hasWord.add(file);
             }
+        } else {
+            // Look up name in the word index, which re-indexes any files that have changed
+            hasWord = WordIndex.filesContaining(allFiles, name);
         }
         LOG.info(String.format("...%d files contain the word `%s`", hasWord.size(), name));
 
         return hasWord;
     }
 
+    /**
+     * For the name of each of `elements`, the files in the workspace that contain it, found in a single pass of the
+     * word index. Pass the result to potentialReferences(_, _) to look up many elements at once.
+     */
+    public Map<String, List<Path>> filesContainingNames(Collection<? extends Element> elements) {
+        var names = new HashSet<String>();
+        for (var e : elements) {
+            var name = simpleName(e).toString();
+            if (name.matches("\\w+")) names.add(name);
+        }
+        return WordIndex.filesContainingAny(FileStore.all(), names);
+    }
+
     private static Cache<String, Boolean> cacheContainsImport = new Cache<>();
 
     private List<Path> containsImport(Collection<Path> allFiles, TypeElement to) {
@@ -458,12 +573,20 @@ public class JavaCompilerService {
         var qName = to.getQualifiedName().toString();
         var toPackage = packageName(to);
         var toClass = className(to);
-        var hasImport = new ArrayList<Path>();
+        // Scan out-of-date files in parallel, then update cacheContainsImport on this thread
+        var outOfDate = new ArrayList<Path>();
         for (var file : allFiles) {
             if (cacheContainsImport.needs(file, qName)) {
-                var found = Parser.containsImport(file, toPackage, toClass);
-                cacheContainsImport.load(file, qName, found);
+                outOfDate.add(file);
             }
+        }
+        var imports = Parser.filter(outOfDate, f -> Parser.containsImport(f, toPackage, toClass), pool);
+        var found = new HashSet<Path>(imports);
+        for (var file : outOfDate) {
+            cacheContainsImport.load(file, qName, found.contains(file));
+        }
+        var hasImport = new ArrayList<Path>();
+        for (var file : allFiles) {
             if (cacheContainsImport.get(file, qName)) {
                 hasImport.add(file);
             }
@@ -524,32 +647,8 @@ public class JavaCompilerService {
         return Optional.empty();
     }
 
-    public List<TreePath> findSymbols(String query, int limit) {
-        LOG.info(String.format("Searching for `%s`...", query));
-
-        var result = new ArrayList<TreePath>();
-        var files = FileStore.all();
-        var checked = 0;
-        var parsed = 0;
-        for (var file : files) {
-            checked++;
-            // First do a fast check if the query matches anything in a file
-            if (!Parser.containsWordMatching(file, query)) continue;
-            // Parse the file and check class members for matches
-            LOG.info(String.format("...%s contains text matches", file.getFileName()));
-            var parse = Parser.parse(file);
-            var symbols = Parser.findSymbolsMatching(parse, query);
-            parsed++;
-            // If we confirm matches, add them to the results
-            if (symbols.size() > 0) LOG.info(String.format("...found %d occurrences", symbols.size()));
-            result.addAll(symbols);
-            // If results are full, stop
-            if (result.size() >= limit) break;
-        }
-        LOG.info(String.format("Found %d matches in %d/%d/%d files", result.size(), checked, parsed, files.size()));
-
-        return result;
-    }
+    /** Where we run text pre-filters, which are IO-bound and thread-safe, and shards of reportErrors(_, _) */
+    private static final ForkJoinPool pool = ForkJoinPool.commonPool();
 
     private static final Logger LOG = Logger.getLogger("main");
 }
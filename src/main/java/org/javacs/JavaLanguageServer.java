@@ -25,6 +25,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -32,7 +34,11 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
@@ -66,19 +72,17 @@ class JavaLanguageServer extends LanguageServer {
         }
     }
 
-    private static Position position(String content, long offset) {
-        int line = 0, column = 0;
-        for (int i = 0; i < offset; i++) {
-            if (content.charAt(i) == '\n') {
-                line++;
-                column = 0;
-            } else column++;
-        }
-        return new Position(line, column);
+    void publishDiagnostics(Collection<URI> files, List<Diagnostic<? extends JavaFileObject>> javaDiagnostics) {
+        publishDiagnostics(files, javaDiagnostics, FileStore::lines);
     }
 
-    void publishDiagnostics(Collection<URI> files, List<Diagnostic<? extends JavaFileObject>> javaDiagnostics) {
+    /** Publish `javaDiagnostics`, whose positions refer to the versions of `files` that `lines` returns */
+    private void publishDiagnostics(
+            Collection<URI> files,
+            List<Diagnostic<? extends JavaFileObject>> javaDiagnostics,
+            Function<URI, LineIndex> lines) {
         var byUri = new HashMap<URI, List<org.javacs.lsp.Diagnostic>>();
+        var linesByUri = new HashMap<URI, LineIndex>();
         for (var j : javaDiagnostics) {
             if (j.getSource() == null) {
                 LOG.warning("No source in warning " + j.getMessage(null));
@@ -94,9 +98,9 @@ class JavaLanguageServer extends LanguageServer {
                 continue;
             }
             // Find start and end position
-            var content = FileStore.contents(uri);
-            var start = position(content, j.getStartPosition());
-            var end = position(content, j.getEndPosition());
+            var index = linesByUri.computeIfAbsent(uri, lines);
+            var start = index.position(j.getStartPosition());
+            var end = index.position(j.getEndPosition());
             var d = new org.javacs.lsp.Diagnostic();
             d.severity = severity(j.getKind());
             d.range = new Range(start, end);
@@ -118,10 +122,22 @@ class JavaLanguageServer extends LanguageServer {
     }
 
     void reportErrors(Collection<URI> uris) {
-        var messages = compiler.reportErrors(uris);
-        publishDiagnostics(uris, messages);
+        // Publish each shard as soon as it's done, instead of waiting for the slowest one
+        compiler.reportErrors(uris, this::publishDiagnostics);
+        // Clear diagnostics in files that reportErrors(_, _) skipped
+        var skipped = new ArrayList<URI>();
+        for (var uri : uris) {
+            if (!FileStore.isJavaFile(uri)) skipped.add(uri);
+        }
+        if (!skipped.isEmpty()) publishDiagnostics(skipped, List.of());
     }
 
+    /** Lints documents in the background as they're edited */
+    private final Linter linter =
+            new Linter(
+                    (file, contents, diagnostics) ->
+                            publishDiagnostics(List.of(file), diagnostics, __ -> new LineIndex(contents)));
+
     private static final Gson gson = new Gson();
 
     private void javaStartProgress(JavaStartProgressParams params) {
@@ -145,6 +161,7 @@ class JavaLanguageServer extends LanguageServer {
         // If classpath is specified by the user, don't infer anything
         if (!classPath.isEmpty()) {
             javaEndProgress();
+            StubCache.setDirectory(CacheDir.of(workspaceRoot), classPath);
             return new JavaCompilerService(classPath, Collections.emptySet());
         }
         // Otherwise, combine inference with user-specified external dependencies
@@ -158,6 +175,7 @@ class JavaLanguageServer extends LanguageServer {
             var docPath = infer.buildDocPath();
 
             javaEndProgress();
+            StubCache.setDirectory(CacheDir.of(workspaceRoot), classPath);
             return new JavaCompilerService(classPath, docPath);
         }
     }
@@ -176,10 +194,40 @@ class JavaLanguageServer extends LanguageServer {
         if (changed) this.compiler = createCompiler();
     }
 
+    /** Completes when FileStore has finished indexing the workspace; until then, FileStore may be incomplete */
+    CompletableFuture<Void> workspaceCrawl = CompletableFuture.completedFuture(null);
+
+    private void crawlWorkspace() {
+        var progress =
+                new ReportProgress() {
+                    @Override
+                    public void start(String message) {
+                        javaStartProgress(new JavaStartProgressParams(message));
+                    }
+
+                    @Override
+                    public void progress(String message, int n, int total) {
+                        javaReportProgress(new JavaReportProgressParams(message));
+                    }
+                };
+        var cacheDir = CacheDir.of(workspaceRoot);
+        FileStore.loadSnapshot(cacheDir.resolve("FileStore.bin"));
+        var crawl = FileStore.setWorkspaceRoots(Set.of(workspaceRoot), progress);
+        workspaceCrawl = crawl.whenComplete((__, ___) -> javaEndProgress());
+        // Index words and symbols in the background, so the first find-references or symbol search doesn't have to
+        // read every file
+        workspaceCrawl.thenRunAsync(
+                () -> {
+                    WordIndex.load(cacheDir.resolve("WordIndex.bin"));
+                    WordIndex.update(FileStore.all());
+                    SymbolIndex.load(cacheDir.resolve("SymbolIndex.bin"));
+                    SymbolIndex.update(FileStore.all());
+                });
+    }
+
     @Override
     public InitializeResult initialize(InitializeParams params) {
         this.workspaceRoot = Paths.get(params.rootUri);
-        FileStore.setWorkspaceRoots(Set.of(Paths.get(params.rootUri)));
 
         var c = new JsonObject();
         c.addProperty("textDocumentSync", 2); // Incremental
@@ -221,10 +269,22 @@ class JavaLanguageServer extends LanguageServer {
         watchers.add(watchJava);
         options.add("watchers", watchers);
         client.registerCapability("workspace/didChangeWatchedFiles", gson.toJsonTree(options));
+
+        // Index the workspace in the background; requests that arrive in the meantime see a partial FileStore
+        crawlWorkspace();
     }
 
     @Override
-    public void shutdown() {}
+    public void shutdown() {
+        LOG.info("Parse cache: " + ParseCache.stats());
+        LOG.info("Compile cache: " + compiler.compileCache.stats());
+        // Don't save a partial index; the next session will just re-read whatever we missed
+        if (workspaceRoot == null || !workspaceCrawl.isDone()) return;
+        var cacheDir = CacheDir.of(workspaceRoot);
+        FileStore.saveSnapshot(cacheDir.resolve("FileStore.bin"));
+        WordIndex.save(cacheDir.resolve("WordIndex.bin"));
+        SymbolIndex.save(cacheDir.resolve("SymbolIndex.bin"));
+    }
 
     public JavaLanguageServer(LanguageClient client) {
         this.client = client;
@@ -232,12 +292,7 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public List<SymbolInformation> workspaceSymbols(WorkspaceSymbolParams params) {
-        var list = new ArrayList<SymbolInformation>();
-        for (var s : compiler.findSymbols(params.query, 50)) {
-            var i = asSymbolInformation(s);
-            list.add(i);
-        }
-        return list;
+        return SymbolIndex.search(params.query, 50);
     }
 
     @Override
@@ -254,6 +309,11 @@ class JavaLanguageServer extends LanguageServer {
         var paths = new HashSet<Path>();
         for (var each : classPath) paths.add(Paths.get(each.getAsString()).toAbsolutePath());
         setClassPath(paths);
+
+        var diagnosticsDelay = java.get("diagnosticsDelay");
+        if (diagnosticsDelay != null && !diagnosticsDelay.isJsonNull()) {
+            linter.delay = Duration.ofMillis(diagnosticsDelay.getAsLong());
+        }
     }
 
     @Override
@@ -351,8 +411,7 @@ class JavaLanguageServer extends LanguageServer {
         }
         // Compile again, focusing on a region that depends on what type of completion we want to do
         var ctx = maybeCtx.get();
-        // TODO CompileFocus should have a "patch" mechanism where we recompile the current file without creating a new
-        // task
+        // If the user is still typing in the same method, this patches the last focus instead of creating a new task
         var focus = compiler.compileFocus(uri, ctx.line, ctx.character);
         // Do a specific type of completion
         List<Completion> cs;
@@ -616,17 +675,10 @@ class JavaLanguageServer extends LanguageServer {
     }
 
     private CompileFile activeFileCache;
-    private int activeFileCacheVersion = -1;
 
-    // TODO take only URI and invalidate based on version
+    /** Set activeFileCache to the compilation of `uri`, which is reused if `uri` was compiled recently */
     private void updateActiveFile(URI uri) {
-        if (activeFileCache == null
-                || !activeFileCache.file.equals(uri)
-                || activeFileCacheVersion != FileStore.version(uri)) {
-            LOG.info("Recompile active file...");
-            activeFileCache = compiler.compileFile(uri);
-            activeFileCacheVersion = FileStore.version(uri);
-        }
+        activeFileCache = compiler.compileFile(uri);
     }
 
     @Override
@@ -742,8 +794,6 @@ class JavaLanguageServer extends LanguageServer {
         if (!FileStore.isJavaFile(uri)) return Optional.empty();
         var line = position.position.line + 1;
         var column = position.position.character + 1;
-        // TODO CompileFocus should have a "patch" mechanism where we recompile the current file without creating a new
-        // task
         var focus = compiler.compileFocus(uri, line, column);
         var help = focus.methodInvocation().map(this::asSignatureHelp);
         return help;
@@ -842,16 +892,43 @@ class JavaLanguageServer extends LanguageServer {
         return sources;
     }
 
+    private static class CachedParse {
+        /** Version in the editor, or -1 if the file wasn't open */
+        final int version;
+        /** Modified time on disk, or null if the file was open */
+        final Instant modified;
+
+        final ParseFile parse;
+
+        CachedParse(int version, Instant modified, ParseFile parse) {
+            this.version = version;
+            this.modified = modified;
+            this.parse = parse;
+        }
+    }
+
+    /** The last few files we parsed, so switching between editors doesn't evict them */
+    private final Map<URI, CachedParse> recentParses =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URI, CachedParse> eldest) {
+                    return size() > 8;
+                }
+            };
+
     private ParseFile cacheParse;
-    private URI cacheParseFile = URI.create("file:///NONE");;
-    private int cacheParseVersion = -1;
 
     private void updateCachedParse(URI file) {
-        if (file.equals(cacheParseFile) && FileStore.version(file) == cacheParseVersion) return;
+        var version = FileStore.version(file);
+        var modified = version == -1 ? FileStore.modified(Paths.get(file)) : null;
+        var existing = recentParses.get(file);
+        if (existing != null && existing.version == version && Objects.equals(existing.modified, modified)) {
+            cacheParse = existing.parse;
+            return;
+        }
         LOG.info(String.format("Updating cached parse file to %s", file));
         cacheParse = compiler.parseFile(file);
-        cacheParseFile = file;
-        cacheParseVersion = FileStore.version(file);
+        recentParses.put(file, new CachedParse(version, modified, cacheParse));
     }
 
     @Override
@@ -868,12 +945,16 @@ class JavaLanguageServer extends LanguageServer {
     }
 
     static SymbolInformation asSymbolInformation(TreePath path) {
+        return asSymbolInformation(path, Parser.location(path));
+    }
+
+    static SymbolInformation asSymbolInformation(TreePath path, Location location) {
         var i = new SymbolInformation();
         var t = path.getLeaf();
         i.kind = asSymbolKind(t.getKind());
         i.name = symbolName(t);
         i.containerName = containerName(path);
-        i.location = Parser.location(path);
+        i.location = location;
         return i;
     }
 
@@ -986,11 +1067,6 @@ class JavaLanguageServer extends LanguageServer {
 
     @Override
     public CodeLens resolveCodeLens(CodeLens unresolved) {
-        // TODO This is pretty klugey, should happen asynchronously after CodeLenses are shown
-        if (!recentlyOpened.isEmpty()) {
-            reportErrors(recentlyOpened);
-            recentlyOpened.clear();
-        }
         // Unpack data
         var data = unresolved.data;
         var command = data.get(0).getAsString();
@@ -1030,6 +1106,14 @@ class JavaLanguageServer extends LanguageServer {
     private static final List<URI> TOO_EXPENSIVE = new ArrayList<>();
     /** cacheIndex[fromFile] is a count of all references from fromFile to cacheCountReferencesFile */
     private final Map<URI, Index> cacheIndex = new HashMap<>();
+    /**
+     * cacheWords[name] is every file that contains the name of a declaration in cacheReferencesFile. Code lenses are
+     * resolved one at a time, so we look up all the names in one pass of the word index, and reuse the result until
+     * the signature of the file or any other file changes.
+     */
+    private Map<String, List<Path>> cacheWords = Map.of();
+
+    private List<Object> cacheWordsKey = List.of();
 
     private boolean cacheReferencesNeedsUpdate(Ptr toPtr, Set<Ptr> signature) {
         if (!cacheReferences.containsKey(toPtr)) return true;
@@ -1045,6 +1129,8 @@ class JavaLanguageServer extends LanguageServer {
         if (!toUri.equals(cacheReferencesFile)) {
             cacheReferences.clear();
             cacheIndex.clear();
+            cacheWords = Map.of();
+            cacheWordsKey = List.of();
             cacheReferencesFile = toUri;
         }
 
@@ -1071,7 +1157,7 @@ class JavaLanguageServer extends LanguageServer {
             LOG.info(String.format("Count references to `%s`...", toPtr));
 
             // Compile all files that *might* contain references to toEl
-            var fromUris = compiler.potentialReferences(toEl.get());
+            var fromUris = compiler.potentialReferences(toEl.get(), cacheWords(declarations, signature));
             fromUris.remove(toUri);
 
             // If it's too expensive to compute the code lens
@@ -1105,6 +1191,18 @@ class JavaLanguageServer extends LanguageServer {
         return count;
     }
 
+    private Map<String, List<Path>> cacheWords(List<Element> declarations, Set<Ptr> signature) {
+        // Edits to the active file don't matter unless they change its signature
+        var versions = FileStore.versions();
+        versions.remove(cacheReferencesFile);
+        var key = List.of(signature, FileStore.changes(), versions);
+        if (!key.equals(cacheWordsKey)) {
+            cacheWords = compiler.filesContainingNames(declarations);
+            cacheWordsKey = key;
+        }
+        return cacheWords;
+    }
+
     private boolean cacheIndexNeedsUpdate(URI fromUri, Set<Ptr> signature) {
         if (!cacheIndex.containsKey(fromUri)) return true;
         var index = cacheIndex.get(fromUri);
@@ -1326,24 +1424,71 @@ class JavaLanguageServer extends LanguageServer {
         throw new RuntimeException("TODO");
     }
 
-    private List<URI> recentlyOpened = new ArrayList<>();
-
     @Override
     public void didOpenTextDocument(DidOpenTextDocumentParams params) {
         FileStore.open(params);
-        recentlyOpened.add(params.textDocument.uri); // Lint this document later
+        linter.schedule(compiler, params.textDocument.uri);
         updateCachedParse(
                 params.textDocument.uri); // So that subsequent documentSymbol and codeLens requests will be faster
+        edited(params.textDocument.uri);
+    }
+
+    /** How long the user has to stop typing before we compile the documents they've edited */
+    private static final Duration IDLE = Duration.ofMillis(500);
+
+    /** Open documents that have been opened or edited since we last compiled them, most recently edited last */
+    private final Set<URI> uncompiled = new LinkedHashSet<>();
+
+    private Instant lastEdit = Instant.EPOCH;
+
+    private void edited(URI uri) {
+        if (!FileStore.isJavaFile(uri)) return;
+        uncompiled.remove(uri);
+        uncompiled.add(uri);
+        lastEdit = Instant.now();
+    }
+
+    /**
+     * Once the user stops typing, compile the documents they've edited, so hover, goto definition and code lens find
+     * them in compiler.compileCache. If a message arrives in the meantime, like another edit, we give up, and try
+     * again the next time the user stops.
+     */
+    @Override
+    public void doAsyncWork(BooleanSupplier interrupted) {
+        if (Duration.between(lastEdit, Instant.now()).compareTo(IDLE) < 0) return;
+        if (uncompiled.isEmpty()) {
+            // Once the open documents are up to date, compile stubs of the rest of the workspace
+            if (workspaceCrawl.isDone()) {
+                StubCache.updateInBackground(compiler, interrupted);
+            }
+            return;
+        }
+        var mostRecentFirst = new ArrayList<URI>(uncompiled);
+        Collections.reverse(mostRecentFirst);
+        for (var uri : mostRecentFirst) {
+            try {
+                if (!compiler.compileCache.speculate(uri, interrupted)) return;
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to compile " + uri, e);
+            }
+            uncompiled.remove(uri);
+        }
     }
 
     @Override
     public void didChangeTextDocument(DidChangeTextDocumentParams params) {
+        // Cancel first, so a lint that is already running can't publish diagnostics of the old version for the new one
+        linter.cancel(params.textDocument.uri);
         FileStore.change(params);
+        linter.schedule(compiler, params.textDocument.uri);
+        edited(params.textDocument.uri);
     }
 
     @Override
     public void didCloseTextDocument(DidCloseTextDocumentParams params) {
         FileStore.close(params);
+        uncompiled.remove(params.textDocument.uri);
+        linter.cancel(params.textDocument.uri);
 
         if (FileStore.isJavaFile(params.textDocument.uri)) {
             // Clear diagnostics
@@ -1354,8 +1499,8 @@ class JavaLanguageServer extends LanguageServer {
     @Override
     public void didSaveTextDocument(DidSaveTextDocumentParams params) {
         if (FileStore.isJavaFile(params.textDocument.uri)) {
-            // Re-lint all active documents
-            reportErrors(FileStore.activeDocuments());
+            // Saving may have fixed or caused errors in other documents that use this one, so re-lint them all
+            linter.scheduleAll(compiler, FileStore.activeDocuments());
         }
     }
 
@@ -0,0 +1,45 @@
+package org.javacs;
+
+import java.util.Arrays;
+import org.javacs.lsp.Position;
+
+/** The offset of the start of each line of a document, for converting between offsets and LSP positions */
+class LineIndex {
+    /** lineStarts[i] is the offset of the first character of line i */
+    private final int[] lineStarts;
+
+    private final int length;
+
+    LineIndex(CharSequence content) {
+        var starts = new int[64];
+        var count = 1;
+        for (var i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = i + 1;
+            }
+        }
+        this.lineStarts = Arrays.copyOf(starts, count);
+        this.length = content.length();
+    }
+
+    /** The 0-based line and character of `offset`. Offsets outside the document are clamped to its ends. */
+    Position position(long offset) {
+        var clamped = (int) Math.max(0, Math.min(offset, length));
+        var i = Arrays.binarySearch(lineStarts, clamped);
+        // If offset isn't the start of a line, binarySearch returns -(next line) - 1
+        var line = i >= 0 ? i : -i - 2;
+        return new Position(line, clamped - lineStarts[line]);
+    }
+
+    /** The offset of (line, character), clamped to the end of the line */
+    int offset(int line, int character) {
+        if (line >= lineStarts.length) return length;
+        var lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : length;
+        return Math.min(lineStarts[line] + character, lineEnd);
+    }
+
+    int lineCount() {
+        return lineStarts.length;
+    }
+}
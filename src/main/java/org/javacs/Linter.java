@@ -0,0 +1,162 @@
+package org.javacs;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Reports errors in open documents while the user types. Each edit schedules a lint of the new version of the
+ * document, once the user has paused for `delay`, on a background thread so it never holds up requests like
+ * completion. A newer edit cancels the pending or running lint of the same document, so we only ever publish the
+ * diagnostics of the latest version. Saving a document re-lints every open document in one batch.
+ */
+class Linter {
+    interface Publish {
+        /** Report `diagnostics` in `file`, whose positions refer to `contents` */
+        void publish(URI file, String contents, List<Diagnostic<? extends JavaFileObject>> diagnostics);
+    }
+
+    /** How long to wait after an edit before we lint */
+    volatile Duration delay = Duration.ofMillis(500);
+
+    private final Publish publish;
+    private final ScheduledExecutorService thread =
+            Executors.newSingleThreadScheduledExecutor(
+                    task -> {
+                        var thread = new Thread(task, "lint");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+    /** The latest lint of each document, until it publishes or is cancelled */
+    private final Map<URI, Run> runs = new HashMap<>();
+
+    Linter(Publish publish) {
+        this.publish = publish;
+    }
+
+    private class Run implements Runnable {
+        final JavaCompilerService compiler;
+        /** The version of each file we lint, when we scheduled the run */
+        final Map<URI, Integer> versions;
+        /** Files that have been edited or closed since, whose diagnostics we must not publish */
+        final Set<URI> cancelled = ConcurrentHashMap.newKeySet();
+        Future<?> future;
+
+        Run(JavaCompilerService compiler, Map<URI, Integer> versions) {
+            this.compiler = compiler;
+            this.versions = versions;
+        }
+
+        /** There's no point finishing a run once every one of its files has been cancelled */
+        boolean cancelled() {
+            return cancelled.containsAll(versions.keySet());
+        }
+
+        @Override
+        public void run() {
+            var files = new ArrayList<URI>();
+            for (var file : versions.keySet()) {
+                // A newer edit has already scheduled its own run
+                if (cancelled.contains(file) || FileStore.version(file) != versions.get(file)) continue;
+                files.add(file);
+            }
+            if (files.isEmpty()) return;
+            try {
+                if (files.size() == 1) {
+                    lintOne(files.get(0));
+                } else {
+                    lintAll(files);
+                }
+            } catch (CancellationException e) {
+                LOG.info(String.format("...cancelled lint of %d files", files.size()));
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to lint " + files, e);
+            }
+        }
+
+        private void lintOne(URI file) {
+            // Read the document here rather than in schedule(_, _), so typing doesn't flatten it after every keystroke
+            var contents = FileStore.contents(file);
+            var found = compiler.lint(file, contents, this::cancelled);
+            publish(file, contents, found);
+        }
+
+        /** Lint `files` in parallel shards, and publish each one as soon as javac has analyzed it */
+        private void lintAll(List<URI> files) {
+            // Like lintOne(_), remember the version javac is about to read, rather than whatever is current at publish
+            var contents = new HashMap<URI, String>();
+            for (var file : files) {
+                contents.put(file, FileStore.contents(file));
+            }
+            compiler.reportErrors(
+                    files,
+                    (reported, found) -> {
+                        for (var file : reported) {
+                            publish(file, contents.get(file), found);
+                        }
+                    },
+                    this::cancelled);
+        }
+
+        private void publish(URI file, String contents, List<Diagnostic<? extends JavaFileObject>> found) {
+            // Check and publish in one step, so an edit or close can't slip in between.
+            // Edits cancel this run before they change FileStore, so if we weren't cancelled, javac read `contents`.
+            synchronized (Linter.this) {
+                if (cancelled.contains(file)) return;
+                if (runs.get(file) == this) runs.remove(file);
+                Linter.this.publish.publish(file, contents, found);
+            }
+        }
+    }
+
+    /** Lint the current version of `file` after `delay`, cancelling any earlier lint of the same file */
+    synchronized void schedule(JavaCompilerService compiler, URI file) {
+        scheduleAll(compiler, List.of(file));
+    }
+
+    /**
+     * Lint the current versions of `files` together after `delay`, cancelling any earlier lints of the same files. A
+     * batch is compiled in parallel shards by JavaCompilerService.reportErrors(_, _, _), which is faster than linting
+     * each file on its own.
+     */
+    synchronized void scheduleAll(JavaCompilerService compiler, Collection<URI> files) {
+        var versions = new HashMap<URI, Integer>();
+        for (var file : files) {
+            if (!FileStore.isJavaFile(file)) continue;
+            cancel(file);
+            versions.put(file, FileStore.version(file));
+        }
+        if (versions.isEmpty()) return;
+        var run = new Run(compiler, versions);
+        for (var file : versions.keySet()) {
+            runs.put(file, run);
+        }
+        run.future = thread.schedule(run, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Stop linting `file`, and never publish diagnostics for the versions we've seen so far */
+    synchronized void cancel(URI file) {
+        var run = runs.remove(file);
+        if (run == null) return;
+        run.cancelled.add(file);
+        // A run that has already started stops at the next phase of javac, when it checks cancelled()
+        if (run.cancelled()) run.future.cancel(false);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,93 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Syntax trees of recently parsed files, shared by every feature that only needs to parse. A tree is reused as long
+ * as the file has the same version in the editor, or the same modified time on disk if it isn't open.
+ *
+ * <p>The cache holds trees for at most MAX_CHARACTERS of source, evicting the least recently used first. Trees are
+ * also held by soft references, so the garbage collector can take them back before that if memory runs short. Trees
+ * come from ParsePool, so they have no doc comments, and they are shared, so callers must not modify them.
+ */
+class ParseCache {
+    /** A syntax tree takes roughly 10x the memory of its source, so this is on the order of 100 MB of trees */
+    private static final long MAX_CHARACTERS = 10_000_000;
+
+    private static class Entry {
+        /** Version in the editor, or -1 if the file wasn't open */
+        final int version;
+        /** Modified time on disk, or null if the file was open */
+        final Instant modified;
+
+        final int characters;
+        final SoftReference<CompilationUnitTree> tree;
+
+        Entry(int version, Instant modified, int characters, CompilationUnitTree tree) {
+            this.version = version;
+            this.modified = modified;
+            this.characters = characters;
+            this.tree = new SoftReference<>(tree);
+        }
+    }
+
+    /** In order of last use, oldest first */
+    private static final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static long characters, hits, misses, evictions;
+
+    /** The syntax tree of the current contents of `file` */
+    static CompilationUnitTree get(Path file) {
+        var uri = file.toUri();
+        var version = FileStore.version(uri);
+        var modified = version == -1 ? FileStore.modified(file) : null;
+        synchronized (ParseCache.class) {
+            var existing = entries.get(file);
+            if (existing != null && existing.version == version && Objects.equals(existing.modified, modified)) {
+                var tree = existing.tree.get();
+                if (tree != null) {
+                    hits++;
+                    return tree;
+                }
+            }
+            misses++;
+        }
+        // Parse outside the lock, so other threads can use the cache in the meantime
+        var contents = FileStore.contents(uri);
+        var tree = Parser.parse(new SourceFileObject(file, contents));
+        put(file, new Entry(version, modified, contents.length(), tree));
+        return tree;
+    }
+
+    private static synchronized void put(Path file, Entry entry) {
+        var replaced = entries.put(file, entry);
+        if (replaced != null) characters -= replaced.characters;
+        characters += entry.characters;
+        var oldest = entries.values().iterator();
+        while (oldest.hasNext()) {
+            var next = oldest.next();
+            // Evict the least recently used trees until we're under budget, and any the garbage collector has taken
+            if (next != entry && (characters > MAX_CHARACTERS || next.tree.get() == null)) {
+                characters -= next.characters;
+                oldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    static synchronized void remove(Path file) {
+        var existing = entries.remove(file);
+        if (existing != null) characters -= existing.characters;
+    }
+
+    static synchronized String stats() {
+        return String.format(
+                "%,d trees of %,d characters, %,d hits, %,d misses, %,d evictions",
+                entries.size(), characters, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,74 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.parser.ParserFactory;
+import com.sun.tools.javac.util.Log;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import javax.tools.JavaFileObject;
+
+/**
+ * Parses source files one after another in a long-lived javac Context, instead of paying for a new JavacTask per file.
+ * A Context isn't thread-safe, so each thread borrows its own engine from the pool for the duration of one parse.
+ *
+ * <p>Trees are parsed with end positions and line maps, but without doc comments: javac parses doc comments lazily,
+ * using the Context that parsed the tree, which may be in use by another thread by then. Use Parser.parseTask(_) if
+ * you need javadoc.
+ */
+class ParsePool {
+    /** Engines are discarded after this many files, so that their Names table and Log don't grow without bound */
+    private static final int MAX_USES = 1000;
+
+    private static final ConcurrentLinkedDeque<Engine> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Source positions of trees returned by parse(_). JavacTrees computes positions from the trees themselves, so one
+     * instance works for trees from any engine.
+     */
+    static final SourcePositions positions = Trees.instance(Parser.parseTask()).getSourcePositions();
+
+    private static class Engine {
+        final JavacTask task = Parser.parseTask();
+        final Log log;
+        final ParserFactory parsers;
+        int uses;
+
+        Engine() {
+            var context = ((BasicJavacTask) task).getContext();
+            log = Log.instance(context);
+            parsers = ParserFactory.instance(context);
+        }
+
+        CompilationUnitTree parse(JavaFileObject file) {
+            CharSequence contents;
+            try {
+                contents = file.getCharContent(false);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            var previous = log.useSource(file);
+            try {
+                var parser = parsers.newParser(contents, false, true, true);
+                var root = parser.parseCompilationUnit();
+                root.sourcefile = file;
+                return root;
+            } finally {
+                log.useSource(previous);
+            }
+        }
+    }
+
+    static CompilationUnitTree parse(JavaFileObject file) {
+        var engine = idle.pollFirst();
+        if (engine == null) engine = new Engine();
+        try {
+            return engine.parse(file);
+        } finally {
+            if (++engine.uses < MAX_USES) idle.offerFirst(engine);
+        }
+    }
+}
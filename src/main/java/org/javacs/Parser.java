@@ -9,6 +9,8 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -23,17 +25,22 @@ class Parser {
     private static final StandardJavaFileManager fileManager =
             compiler.getStandardFileManager(__ -> {}, null, Charset.defaultCharset());
 
+    /**
+     * The fixed cost of creating a task is greater than the cost of parsing 1 file, so prefer parse(_), which reuses
+     * tasks. Use this when you need doc comments.
+     */
     static JavacTask parseTask(JavaFileObject file) {
-        // TODO the fixed cost of creating a task is greater than the cost of parsing 1 file; eliminate the task
-        // creation
+        return parseTask(Collections.singletonList(file));
+    }
+
+    /** A task with no files, whose Context ParsePool uses to parse files one at a time */
+    static JavacTask parseTask() {
+        return parseTask(Collections.emptyList());
+    }
+
+    private static JavacTask parseTask(List<JavaFileObject> files) {
         return (JavacTask)
-                compiler.getTask(
-                        null,
-                        fileManager,
-                        Parser::onError,
-                        Collections.emptyList(),
-                        null,
-                        Collections.singletonList(file));
+                compiler.getTask(null, fileManager, Parser::onError, Collections.emptyList(), null, files);
     }
 
     static JavacTask parseTask(Path source) {
@@ -43,20 +50,14 @@ class Parser {
         return parseTask(file);
     }
 
+    /** Parse `file` without doc comments; use ParsePool.positions to find the positions of its trees */
     static CompilationUnitTree parse(JavaFileObject file) {
-        try {
-            return parseTask(file).parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return ParsePool.parse(file);
     }
 
+    /** Parse the current contents of `source`, including unsaved edits if it's open */
     static CompilationUnitTree parse(Path source) {
-        try {
-            return parseTask(source).parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return parse(new SourceFileObject(source));
     }
 
     private static boolean isWordChar(char c) {
@@ -118,67 +119,104 @@ class Parser {
     }
 
     // TODO move all this to StringSearch
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1 * 1024 * 1024);
+    /** Each thread gets its own buffer, so the contains* methods can be called from many threads at once */
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(1 * 1024 * 1024));
 
-    // TODO cache the progress made by searching shorter queries
-    static boolean containsWordMatching(Path java, String query) {
+    /**
+     * Read java into this thread's SEARCH_BUFFER. A file that doesn't fit gets a buffer of its own, which we drop when
+     * the search is done, so one huge file doesn't pin that much memory to every thread that has searched it. We don't
+     * memory-map large files, because a mapping isn't released until it's garbage collected, and on Windows a mapped
+     * file can't be edited or deleted until then.
+     */
+    static ByteBuffer read(Path java) {
         try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = Charset.forName("UTF-8").decode(SEARCH_BUFFER);
-            return matchesTitleCase(chars, query);
+            // javac can't read a source file larger than the largest array, so neither do we
+            var size = (int) Math.min(channel.size(), MAX_READ);
+            var buffer = SEARCH_BUFFER.get();
+            if (size > buffer.capacity()) buffer = ByteBuffer.allocate(size);
+            buffer.position(0);
+            buffer.limit(size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+            buffer.flip();
+            return buffer;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static final int MAX_READ = Integer.MAX_VALUE - 8;
+
+    /** The files that pass `test`, in their original order, checked in parallel on `pool` */
+    static List<Path> filter(Collection<Path> files, Predicate<Path> test, ForkJoinPool pool) {
+        var list = new ArrayList<Path>(files);
+        return pool.submit(() -> list.parallelStream().filter(test).collect(Collectors.toList())).join();
+    }
+
+    static boolean containsWordMatching(Path java, String query) {
+        var bytes = read(java);
+        // If query is ASCII, we can match it against the raw bytes of the file without decoding
+        if (isAscii(query)) return matchesTitleCase(new AsciiBytes(bytes), query);
+        var chars = Charset.forName("UTF-8").decode(bytes);
+        return matchesTitleCase(chars, query);
+    }
+
+    private static boolean isAscii(String query) {
+        for (var i = 0; i < query.length(); i++) {
+            if (query.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The bytes of a UTF-8 file, viewed as characters. Every byte of a multi-byte character becomes NON_ASCII, which
+     * is a lowercase letter, so it's part of a word but never matches an ASCII query.
+     */
+    private static class AsciiBytes implements CharSequence {
+        private static final char NON_ASCII = '\u00AA';
+        private final ByteBuffer bytes;
+
+        AsciiBytes(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            var b = bytes.get(index);
+            return b < 0 ? NON_ASCII : (char) b;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            var chars = new StringBuilder(end - start);
+            for (var i = start; i < end; i++) chars.append(charAt(i));
+            return chars;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
     static boolean containsText(Path java, String query) {
         var search = new StringSearch(query);
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return search.next(read(java)) != -1;
     }
 
     static boolean containsWord(Path java, String query) {
         var search = new StringSearch(query);
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return search.nextWord(read(java)) != -1;
     }
 
     static boolean containsPattern(Path java, Pattern pattern) {
-        try (var channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            var limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            var chars = Charset.forName("UTF-8").decode(SEARCH_BUFFER);
-            return pattern.matcher(chars).find();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        var chars = Charset.forName("UTF-8").decode(read(java));
+        return pattern.matcher(chars).find();
     }
 
     static List<TreePath> findSymbolsMatching(CompilationUnitTree parse, String query) {
@@ -219,10 +257,10 @@ class Parser {
     }
 
     static Location location(TreePath p) {
-        // This is very questionable, will this Trees object actually work?
-        var task = parseTask(p.getCompilationUnit().getSourceFile());
-        var trees = Trees.instance(task);
-        var pos = trees.getSourcePositions();
+        return location(p, ParsePool.positions);
+    }
+
+    static Location location(TreePath p, SourcePositions pos) {
         var cu = p.getCompilationUnit();
         var lines = cu.getLineMap();
         long start = pos.getStartPosition(cu, p.getLeaf()), end = pos.getEndPosition(cu, p.getLeaf());
@@ -234,75 +272,41 @@ class Parser {
 
     static boolean containsImport(Path file, String toPackage, String toClass) {
         if (toPackage.isEmpty()) return true;
-        var samePackage = Pattern.compile("^package +" + toPackage + ";");
-        var importClass = Pattern.compile("^import +" + toPackage + "\\." + toClass + ";");
-        var importStar = Pattern.compile("^import +" + toPackage + "\\.\\*;");
-        var importStatic = Pattern.compile("^import +static +" + toPackage + "\\." + toClass);
-        var startOfClass = Pattern.compile("^[\\w ]*class +\\w+");
-        try (var lines = FileStore.lines(file)) {
-            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                if (startOfClass.matcher(line).find()) return false;
-                if (samePackage.matcher(line).find()) return true;
-                if (importClass.matcher(line).find()) return true;
-                if (importStar.matcher(line).find()) return true;
-                if (importStatic.matcher(line).find()) return true;
-                if (importClass.matcher(line).find()) return true;
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        var header = SourceHeader.of(file);
+        if (header.packageName.equals(toPackage)) return true;
+        var className = toPackage + "." + toClass;
+        var star = toPackage + ".*";
+        for (var i : header.imports) {
+            if (i.equals(className) || i.equals(star)) return true;
+        }
+        for (var i : header.staticImports) {
+            if (i.startsWith(className) && (i.length() == className.length() || i.charAt(className.length()) == '.'))
+                return true;
         }
         return false;
     }
 
+    /** The package `file` declares on disk, or "" if it doesn't declare one */
     static String packageName(Path file) {
-        var packagePattern = Pattern.compile("^package +(.*);");
-        var startOfClass = Pattern.compile("^[\\w ]*class +\\w+");
-        try (var lines = FileStore.lines(file)) {
-            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                if (startOfClass.matcher(line).find()) return "";
-                var matchPackage = packagePattern.matcher(line);
-                if (matchPackage.matches()) {
-                    var id = matchPackage.group(1);
-                    return id;
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        // TODO fall back on parsing file
-        return "";
+        // Not cached by SourceHeader, because FileStore calls this to find out about files it hasn't seen yet
+        return SourceHeader.parse(read(file)).packageName;
     }
 
     static Set<String> importsPackages(Path file) {
-        var importStatic = Pattern.compile("^import +static +(.+);");
-        var importAny = Pattern.compile("^import +(.+);");
-        var startOfClass = Pattern.compile("^[\\w ]*class +\\w+");
+        var header = SourceHeader.of(file);
         var pkgs = new HashSet<String>();
-        try (var lines = FileStore.lines(file)) {
-            for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                if (startOfClass.matcher(line).find()) break;
-                var matchImportStatic = importStatic.matcher(line);
-                if (matchImportStatic.matches()) {
-                    var id = matchImportStatic.group(1);
-                    var pkg = new StringJoiner(".");
-                    for (var part : id.split("\\.")) {
-                        var firstChar = part.charAt(0);
-                        if (Character.isUpperCase(firstChar) || firstChar == '*') break;
-                        pkg.add(part);
-                    }
-                    pkgs.add(pkg.toString());
-                    continue;
-                }
-                var matchImportAny = importAny.matcher(line);
-                if (matchImportAny.matches()) {
-                    var id = matchImportAny.group(1);
-                    var lastDot = id.lastIndexOf(".");
-                    if (lastDot != -1) id = id.substring(0, lastDot);
-                    pkgs.add(id);
-                }
+        for (var id : header.staticImports) {
+            var pkg = new StringJoiner(".");
+            for (var part : id.split("\\.")) {
+                var firstChar = part.charAt(0);
+                if (Character.isUpperCase(firstChar) || firstChar == '*') break;
+                pkg.add(part);
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            pkgs.add(pkg.toString());
+        }
+        for (var id : header.imports) {
+            var lastDot = id.lastIndexOf(".");
+            pkgs.add(lastDot == -1 ? id : id.substring(0, lastDot));
         }
         return pkgs;
     }
@@ -311,37 +315,16 @@ class Parser {
     static ExistingImports existingImports(Collection<Path> allJavaFiles) {
         var classes = new HashSet<String>();
         var packages = new HashSet<String>();
-        var importClass = Pattern.compile("^import +(([\\w\\.]+)\\.\\w+);");
-        var importStar = Pattern.compile("^import +([\\w\\.]+)\\.\\*;");
-        var importSimple = Pattern.compile("^import +(\\w+);");
         for (var path : allJavaFiles) {
-            try (var lines = FileStore.lines(path)) {
-                for (var line = lines.readLine(); line != null; line = lines.readLine()) {
-                    // If we reach a class declaration, stop looking for imports
-                    // TODO This could be a little more specific
-                    if (line.contains("class")) break;
-                    // import foo.bar.Doh;
-                    var matchesClass = importClass.matcher(line);
-                    if (matchesClass.matches()) {
-                        String className = matchesClass.group(1), packageName = matchesClass.group(2);
-                        packages.add(packageName);
-                        classes.add(className);
-                    }
+            for (var id : SourceHeader.of(path).imports) {
+                if (id.endsWith(".*")) {
                     // import foo.bar.*
-                    var matchesStar = importStar.matcher(line);
-                    if (matchesStar.matches()) {
-                        var packageName = matchesStar.group(1);
-                        packages.add(packageName);
-                    }
-                    // import Doh
-                    var matchesSimple = importSimple.matcher(line);
-                    if (matchesSimple.matches()) {
-                        var className = matchesSimple.group(1);
-                        classes.add(className);
-                    }
+                    packages.add(mostName(id));
+                } else {
+                    // import foo.bar.Doh or import Doh
+                    classes.add(id);
+                    if (id.contains(".")) packages.add(mostName(id));
                 }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
             }
         }
         return new ExistingImports(classes, packages);
@@ -381,68 +364,6 @@ class Parser {
     }
 
     // TODO does this really belong in Parser?
-    private static Optional<String> resolveSymbol(String unresolved, ExistingImports imports, Set<String> classPath) {
-        // Try to disambiguate by looking for exact matches
-        // For example, Foo is exactly matched by `import com.bar.Foo`
-        // Foo is *not* exactly matched by `import com.bar.*`
-        var candidates = imports.classes.stream().filter(c -> c.endsWith("." + unresolved)).collect(Collectors.toSet());
-        if (candidates.size() > 1) {
-            LOG.warning(
-                    String.format("%s is ambiguous between previously imported candidates %s", unresolved, candidates));
-            return Optional.empty();
-        } else if (candidates.size() == 1) {
-            return Optional.of(candidates.iterator().next());
-        }
-
-        // Try to disambiguate by looking at package names
-        // Both normal imports like `import com.bar.Foo`, and star-imports like `import com.bar.*`,
-        // are used to generate package names
-        candidates =
-                classPath
-                        .stream()
-                        .filter(c -> lastName(c).equals(unresolved))
-                        .filter(c -> imports.packages.contains(mostName(c)))
-                        .collect(Collectors.toSet());
-        if (candidates.size() > 1) {
-            LOG.warning(String.format("%s is ambiguous between package-based candidates %s", unresolved, candidates));
-            return Optional.empty();
-        } else if (candidates.size() == 1) {
-            return Optional.of(candidates.iterator().next());
-        }
-
-        // If there is only one class on the classpath with this name, use it
-        candidates = classPath.stream().filter(c -> lastName(c).equals(unresolved)).collect(Collectors.toSet());
-
-        if (candidates.size() > 1) {
-            LOG.warning(String.format("%s is ambiguous between classpath candidates %s", unresolved, candidates));
-        } else if (candidates.size() == 1) {
-            return Optional.of(candidates.iterator().next());
-        } else {
-            LOG.warning(unresolved + " does not appear on the classpath");
-        }
-
-        // Try to import from java stdlib
-        Comparator<String> order =
-                Comparator.comparing(
-                        c -> {
-                            if (c.startsWith("java.lang")) return 1;
-                            else if (c.startsWith("java.util")) return 2;
-                            else if (c.startsWith("java.io")) return 3;
-                            else return 4;
-                        });
-        return candidates.stream().filter(c -> c.startsWith("java.")).sorted(order).findFirst();
-    }
-
-    // TODO does this really belong in Parser?
-    static Map<String, String> resolveSymbols(
-            Set<String> unresolvedSymbols, ExistingImports imports, Set<String> classPath) {
-        var result = new HashMap<String, String>();
-        for (var s : unresolvedSymbols) {
-            resolveSymbol(s, imports, classPath).ifPresent(resolved -> result.put(s, resolved));
-        }
-        return result;
-    }
-
     static String fileName(URI uri) {
         var parts = uri.toString().split("/");
         if (parts.length == 0) return "";
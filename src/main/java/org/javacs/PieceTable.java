@@ -0,0 +1,281 @@
+package org.javacs;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An immutable document, stored as a list of pieces of text: the text the document was opened with, and the text of
+ * each edit since. The pieces are kept in a treap ordered by their position in the document, and each node remembers
+ * how many characters and newlines are beneath it, so edits and (line, character) lookups take O(log n) regardless of
+ * the size of the document. replace(_, _, _) returns a new version that shares all but O(log n) nodes with this one,
+ * so each version of an open document can be read from any thread while the user keeps typing.
+ */
+class PieceTable implements CharSequence {
+    private final Node root;
+    /** The whole document as a String, or null if nobody has asked for it yet */
+    private volatile String flat;
+
+    PieceTable(String original) {
+        this(original.isEmpty() ? null : new Node(new Buffer(original), 0, original.length(), random()), original);
+    }
+
+    private PieceTable(Node root, String flat) {
+        this.root = root;
+        this.flat = flat;
+    }
+
+    /** Replace the text between (startLine, startCharacter) and (endLine, endCharacter) with `text` */
+    PieceTable replace(int startLine, int startCharacter, int endLine, int endCharacter, String text) {
+        var start = offset(startLine, startCharacter);
+        var end = Math.max(start, offset(endLine, endCharacter));
+        return replace(start, end, text);
+    }
+
+    /** Replace the characters in [start, end) with `text` */
+    PieceTable replace(int start, int end, String text) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) is not in [0, %d)", start, end, length()));
+        }
+        if (start == end && text.isEmpty()) return this;
+        var left = split(root, start);
+        var right = split(left[1], end - start);
+        var middle = left[0];
+        if (!text.isEmpty()) {
+            // When the user is typing, each edit starts where the last one ended, so we just grow the last piece
+            var extended = extendLast(middle, text);
+            if (extended != null) {
+                middle = extended;
+            } else {
+                var piece = new Node(new Buffer(text), 0, text.length(), random());
+                middle = merge(middle, piece);
+            }
+        }
+        return new PieceTable(merge(middle, right[1]), null);
+    }
+
+    /** The offset of (line, character), clamping character to the end of the line and line to the end of the file */
+    int offset(int line, int character) {
+        var lineStart = lineStart(line);
+        if (lineStart == -1) return length();
+        var nextLine = lineStart(line + 1);
+        var lineEnd = nextLine == -1 ? length() : nextLine - 1;
+        return Math.min(lineStart + character, lineEnd);
+    }
+
+    /** The offset of the first character on `line`, or -1 if the document doesn't have that many lines */
+    private int lineStart(int line) {
+        if (line == 0) return 0;
+        var node = root;
+        var n = line;
+        var base = 0;
+        while (node != null) {
+            var leftNewlines = newlines(node.left);
+            var leftSize = size(node.left);
+            if (n <= leftNewlines) {
+                node = node.left;
+            } else if (n <= leftNewlines + node.newlines) {
+                n -= leftNewlines;
+                var lines = node.buffer.newlines;
+                var i = lowerBound(lines, node.start) + n - 1;
+                return base + leftSize + lines[i] - node.start + 1;
+            } else {
+                n -= leftNewlines + node.newlines;
+                base += leftSize + node.length;
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int length() {
+        return size(root);
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) throw new IndexOutOfBoundsException(index);
+        var flat = this.flat;
+        if (flat != null) return flat.charAt(index);
+        var node = root;
+        while (true) {
+            var leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index < leftSize + node.length) {
+                return node.buffer.text.charAt(node.start + index - leftSize);
+            } else {
+                index -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        // Two threads may both flatten the same version, but they get the same String
+        var flat = this.flat;
+        if (flat == null) {
+            var out = new StringBuilder(length());
+            append(root, out);
+            flat = out.toString();
+            this.flat = flat;
+        }
+        return flat;
+    }
+
+    private static void append(Node node, StringBuilder out) {
+        if (node == null) return;
+        append(node.left, out);
+        out.append(node.buffer.text, node.start, node.start + node.length);
+        append(node.right, out);
+    }
+
+    /** Split `node` into the first `n` characters and everything after, copying the nodes along the way */
+    private static Node[] split(Node node, int n) {
+        if (node == null) return new Node[] {null, null};
+        var leftSize = size(node.left);
+        if (n <= leftSize) {
+            var parts = split(node.left, n);
+            return new Node[] {parts[0], node.with(parts[1], node.right)};
+        }
+        if (n >= leftSize + node.length) {
+            var parts = split(node.right, n - leftSize - node.length);
+            return new Node[] {node.with(node.left, parts[0]), parts[1]};
+        }
+        // n falls inside this piece, so cut it in two
+        var head = n - leftSize;
+        // tail takes the place of node in the heap order, so it gets the same priority
+        var headNode = new Node(node.buffer, node.start, head, node.priority, node.left, null);
+        var tailNode = new Node(node.buffer, node.start + head, node.length - head, node.priority, null, node.right);
+        return new Node[] {headNode, tailNode};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            return left.with(left.left, merge(left.right, right));
+        } else {
+            return right.with(merge(left, right.left), right.right);
+        }
+    }
+
+    /**
+     * Pieces we grow by copying their text, so a user typing in one place for a long time costs O(MAX_EXTEND) per
+     * keystroke rather than O(everything they've typed)
+     */
+    private static final int MAX_EXTEND = 64;
+
+    /**
+     * If the last piece of `node` is the whole of a short edit, a copy of `node` with `text` appended to that piece, or
+     * null if there's no such piece
+     */
+    private static Node extendLast(Node node, String text) {
+        if (node == null) return null;
+        if (node.right != null) {
+            var right = extendLast(node.right, text);
+            if (right == null) return null;
+            return node.with(node.left, right);
+        }
+        var buffer = node.buffer;
+        if (node.start != 0
+                || node.length != buffer.text.length()
+                || buffer.text.length() + text.length() > MAX_EXTEND) return null;
+        var grown = new Buffer(buffer.text + text);
+        return new Node(grown, 0, grown.text.length(), node.priority, node.left, null);
+    }
+
+    /** The first i such that sorted[i] >= key, or sorted.length */
+    private static int lowerBound(int[] sorted, int key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int random() {
+        return ThreadLocalRandom.current().nextInt();
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int newlines(Node node) {
+        return node == null ? 0 : node.subtreeNewlines;
+    }
+
+    /** Text that pieces point into, which never changes once created */
+    private static class Buffer {
+        final String text;
+        /** Offsets of every '\n' in text, in ascending order */
+        final int[] newlines;
+
+        Buffer(String text) {
+            this.text = text;
+            var count = 0;
+            for (var i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') count++;
+            }
+            this.newlines = new int[count];
+            var j = 0;
+            for (var i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') newlines[j++] = i;
+            }
+        }
+
+        int countNewlines(int start, int length) {
+            return lowerBound(newlines, start + length) - lowerBound(newlines, start);
+        }
+    }
+
+    private static class Node {
+        final Buffer buffer;
+        final int start, length, newlines;
+        final int priority;
+        final Node left, right;
+        /** Total characters and newlines in this subtree */
+        final int size, subtreeNewlines;
+
+        Node(Buffer buffer, int start, int length, int priority) {
+            this(buffer, start, length, priority, null, null);
+        }
+
+        Node(Buffer buffer, int start, int length, int priority, Node left, Node right) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            this.newlines = buffer.countNewlines(start, length);
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + length + size(right);
+            this.subtreeNewlines = newlines(left) + newlines + newlines(right);
+        }
+
+        /** A copy of this piece with different children */
+        Node with(Node left, Node right) {
+            return new Node(buffer, start, length, newlines, priority, left, right);
+        }
+
+        private Node(Buffer buffer, int start, int length, int newlines, int priority, Node left, Node right) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            this.newlines = newlines;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + length + size(right);
+            this.subtreeNewlines = newlines(left) + newlines + newlines(right);
+        }
+    }
+}
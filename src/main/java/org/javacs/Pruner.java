@@ -3,11 +3,13 @@ package org.javacs;
 import com.sun.source.tree.*;
 import com.sun.source.util.SourcePositions;
 import com.sun.source.util.TreeScanner;
-import com.sun.source.util.Trees;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
+import javax.lang.model.element.Name;
 
 class Pruner {
     private static String prune(CompilationUnitTree root, SourcePositions pos, StringBuilder buffer, long[] offsets) {
@@ -43,15 +45,7 @@ class Pruner {
             }
 
             void erase(long start, long end) {
-                for (int i = (int) start; i < end; i++) {
-                    switch (buffer.charAt(i)) {
-                        case '\r':
-                        case '\n':
-                            break;
-                        default:
-                            buffer.setCharAt(i, ' ');
-                    }
-                }
+                Pruner.erase(buffer, start, end);
             }
 
             @Override
@@ -109,25 +103,21 @@ class Pruner {
 
     static String prune(URI file, int line, int character) {
         // Parse file
-        var contents = FileStore.contents(file);
-        var task = Parser.parseTask(new SourceFileObject(file, contents));
-        CompilationUnitTree root;
-        try {
-            root = task.parse().iterator().next();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        var root = ParseCache.get(Paths.get(file));
+        var contents = contents(root);
         // Erase all blocks that don't include line:character
         var lines = root.getLineMap();
         var cursor = lines.getPosition(line, character);
-        var pos = Trees.instance(task).getSourcePositions();
+        var pos = ParsePool.positions;
         var buffer = new StringBuilder(contents);
         return prune(root, pos, buffer, new long[] {cursor});
     }
 
     static String prune(URI file, String name) {
+        // Parse file
+        var root = ParseCache.get(Paths.get(file));
+        var contents = contents(root);
         // Find all occurrences of name in contents
-        var contents = FileStore.contents(file);
         var list = new ArrayList<Long>();
         var pattern = Pattern.compile("\\b" + Pattern.quote(name) + "\\b");
         var matcher = pattern.matcher(contents);
@@ -138,17 +128,102 @@ class Pruner {
         for (var i = 0; i < list.size(); i++) {
             offsets[i] = list.get(i);
         }
-        // Parse file
-        var task = Parser.parseTask(new SourceFileObject(file, contents));
-        CompilationUnitTree root;
+        // Erase all blocks that don't contain name
+        var buffer = new StringBuilder(contents);
+        var pos = ParsePool.positions;
+        return prune(root, pos, buffer, offsets);
+    }
+
+    private static final String THROW = "throw null;";
+
+    /**
+     * The contents of `file` with the bodies of methods and lambdas erased, which is all another file needs to compile
+     * against it. Each erased body becomes `throw null;`, so methods still return and blank finals are still assigned.
+     * Explicit super(...) and this(...) calls are kept, as are initializer blocks, which can't throw. Line breaks are
+     * kept too, so positions and line numbers don't change.
+     */
+    static String eraseBodies(Path file) {
+        var root = ParseCache.get(file);
+        var buffer = new StringBuilder(contents(root));
+        var pos = ParsePool.positions;
+        class Scan extends TreeScanner<Void, Void> {
+            @Override
+            public Void visitMethod(MethodTree node, Void __) {
+                if (node.getBody() != null) {
+                    var isConstructor = node.getName().contentEquals("<init>");
+                    eraseBody(node.getBody(), isConstructor);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitLambdaExpression(LambdaExpressionTree node, Void __) {
+                if (node.getBody() instanceof BlockTree) {
+                    eraseBody((BlockTree) node.getBody(), false);
+                    return null;
+                }
+                return super.visitLambdaExpression(node, null);
+            }
+
+            void eraseBody(BlockTree body, boolean isConstructor) {
+                var statements = body.getStatements();
+                var first = 0;
+                if (isConstructor && !statements.isEmpty() && isConstructorCall(statements.get(0))) first = 1;
+                if (first >= statements.size()) return;
+                var start = (int) pos.getStartPosition(root, statements.get(first));
+                var end = (int) pos.getEndPosition(root, statements.get(statements.size() - 1));
+                if (start < 0 || end > buffer.length()) return;
+                // Find room for `throw null;` that doesn't cover a line break
+                var room = -1;
+                for (int i = start, run = 0; i < end; i++) {
+                    var c = buffer.charAt(i);
+                    run = c == '\n' || c == '\r' ? 0 : run + 1;
+                    if (run == THROW.length()) {
+                        room = i + 1 - run;
+                        break;
+                    }
+                }
+                // Small bodies are cheap to compile, so just leave them
+                if (room == -1) return;
+                erase(buffer, start, end);
+                buffer.replace(room, room + THROW.length(), THROW);
+            }
+
+            boolean isConstructorCall(StatementTree statement) {
+                if (!(statement instanceof ExpressionStatementTree)) return false;
+                var expression = ((ExpressionStatementTree) statement).getExpression();
+                if (!(expression instanceof MethodInvocationTree)) return false;
+                var method = ((MethodInvocationTree) expression).getMethodSelect();
+                Name name;
+                if (method instanceof IdentifierTree) name = ((IdentifierTree) method).getName();
+                else if (method instanceof MemberSelectTree) name = ((MemberSelectTree) method).getIdentifier();
+                else return false;
+                return name.contentEquals("super") || name.contentEquals("this");
+            }
+        }
+        new Scan().scan(root, null);
+        return buffer.toString();
+    }
+
+    /** Replace everything in [start, end) except line breaks with spaces */
+    private static void erase(StringBuilder buffer, long start, long end) {
+        for (int i = (int) start; i < end; i++) {
+            switch (buffer.charAt(i)) {
+                case '\r':
+                case '\n':
+                    break;
+                default:
+                    buffer.setCharAt(i, ' ');
+            }
+        }
+    }
+
+    /** The text `root` was parsed from, which may be older than FileStore.contents(_) if the file is being edited */
+    private static String contents(CompilationUnitTree root) {
         try {
-            root = task.parse().iterator().next();
+            return root.getSourceFile().getCharContent(true).toString();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Erase all blocks that don't contain name
-        var buffer = new StringBuilder(contents);
-        var pos = Trees.instance(task).getSourcePositions();
-        return prune(root, pos, buffer, offsets);
     }
 }
@@ -0,0 +1,101 @@
+package org.javacs;
+
+import com.sun.source.tree.*;
+import com.sun.source.util.*;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import javax.lang.model.element.*;
+import javax.tools.*;
+
+/**
+ * Analyzes a batch one file at a time, and reports the errors and unused-variable warnings in each file as soon as
+ * javac has analyzed it, so the first files don't wait for the slowest one. We can't wait for javac's ANALYZE events
+ * instead, because task.analyze() attributes every file before it fires any of them, and fires none at all once there
+ * are errors.
+ */
+class ReportAnalyzed {
+    private final JavacTaskImpl task;
+    private final Trees trees;
+    private final List<Diagnostic<? extends JavaFileObject>> diags;
+    private final JavaCompilerService.ReportDiagnostics report;
+    /** The number of diagnostics in each file when we reported it */
+    private final Map<URI, Integer> reported = new HashMap<>();
+
+    /** `diags` collects the diagnostics that javac reports in `task` */
+    ReportAnalyzed(
+            JavacTask task,
+            List<Diagnostic<? extends JavaFileObject>> diags,
+            JavaCompilerService.ReportDiagnostics report) {
+        // Only the implementation can enter and analyze some of the classes in a task
+        this.task = (JavacTaskImpl) task;
+        this.trees = Trees.instance(task);
+        this.diags = diags;
+        this.report = report;
+    }
+
+    /** Parse, enter and analyze every source in the task, reporting each file when it's done */
+    void run() throws IOException {
+        var roots = task.parse();
+        task.enter();
+        for (var root : roots) {
+            task.analyze(classes(root));
+            report(root);
+        }
+        // Attributing a later file occasionally adds a diagnostic to an earlier one
+        for (var root : roots) {
+            var uri = root.getSourceFile().toUri();
+            if (inFile(uri).size() != reported.get(uri)) report(root);
+        }
+    }
+
+    private List<Element> classes(CompilationUnitTree root) {
+        var classes = new ArrayList<Element>();
+        for (var t : root.getTypeDecls()) {
+            if (!(t instanceof ClassTree)) continue;
+            var el = trees.getElement(TreePath.getPath(root, t));
+            if (el != null) classes.add(el);
+        }
+        return classes;
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> inFile(URI uri) {
+        var found = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (var d : diags) {
+            if (d.getSource() != null && d.getSource().toUri().equals(uri)) {
+                found.add(d);
+            }
+        }
+        return found;
+    }
+
+    private void report(CompilationUnitTree root) {
+        var uri = root.getSourceFile().toUri();
+        var found = inFile(uri);
+        reported.put(uri, found.size());
+        found.addAll(unused(root));
+        report.report(List.of(uri), found);
+    }
+
+    /** Check for unused privates */
+    private List<Warning> unused(CompilationUnitTree root) {
+        var warnings = new ArrayList<Warning>();
+        var warnUnused = new WarnUnused(task);
+        warnUnused.scan(root, null);
+        for (var unusedEl : warnUnused.notUsed()) {
+            var path = trees.getPath(unusedEl);
+            var message = String.format("`%s` is not used", unusedEl.getSimpleName());
+            Diagnostic.Kind kind;
+            if (unusedEl instanceof ExecutableElement || unusedEl instanceof TypeElement) {
+                kind = Diagnostic.Kind.OTHER;
+            } else {
+                kind = Diagnostic.Kind.WARNING;
+            }
+            warnings.add(new Warning(task, path, kind, "unused", message));
+        }
+        // TODO hint fields that could be final
+        // TODO hint unused exception
+        return warnings;
+    }
+}
@@ -9,6 +9,12 @@ import java.util.logging.Logger;
 import javax.tools.*;
 
 class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    /**
+     * javac only looks on the source path for files that aren't in the batch, which it needs for their signatures and
+     * not their method bodies, so by default we erase the bodies to save javac the trouble of compiling them.
+     */
+    boolean signaturesOnly = true;
+
     public SourceFileManager() {
         super(createDelegateFileManager());
     }
@@ -28,11 +34,18 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     public Iterable<JavaFileObject> list(
             Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) throws IOException {
         if (location == StandardLocation.SOURCE_PATH) {
-            var stream = FileStore.list(packageName).stream().map(this::asJavaFileObject);
+            var stream = FileStore.list(packageName).stream().filter(f -> !hasStubs(f)).map(this::asJavaFileObject);
             return stream::iterator;
         } else if (location == StandardLocation.CLASS_PATH) {
+            // javac ignores class files on the source path, so we offer stubs of workspace sources here instead,
+            // ahead of the class path so they take precedence over stale build output
+            var stubs = stubs(packageName);
             // Listing large class paths is expensive
-            return cacheClassPath.get(packageName);
+            var classPath = cacheClassPath.get(packageName);
+            if (stubs.isEmpty()) return classPath;
+            var both = new ArrayList<JavaFileObject>(stubs);
+            classPath.forEach(both::add);
+            return both;
         } else {
             return super.list(location, packageName, kinds, recurse);
         }
@@ -46,13 +59,29 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
         }
     }
 
+    /** If javac only needs signatures, it can read class files from StubCache instead of sources that haven't changed */
+    private boolean hasStubs(Path file) {
+        return signaturesOnly && StubCache.stubs(file).isPresent();
+    }
+
+    private List<JavaFileObject> stubs(String packageName) {
+        var list = new ArrayList<JavaFileObject>();
+        if (!signaturesOnly) return list;
+        for (var file : FileStore.list(packageName)) {
+            StubCache.stubs(file).ifPresent(list::addAll);
+        }
+        return list;
+    }
+
     private JavaFileObject asJavaFileObject(Path file) {
-        return new SourceFileObject(file);
+        return signaturesOnly ? SourceFileObject.signaturesOnly(file) : new SourceFileObject(file);
     }
 
     @Override
     public String inferBinaryName(Location location, JavaFileObject file) {
-        if (location == StandardLocation.SOURCE_PATH) {
+        if (file instanceof StubCache.Stub) {
+            return ((StubCache.Stub) file).binaryName;
+        } else if (location == StandardLocation.SOURCE_PATH) {
             var source = (SourceFileObject) file;
             var packageName = FileStore.packageName(source.path);
             var className = removeExtension(source.path.getFileName().toString());
@@ -82,12 +111,11 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
     public JavaFileObject getJavaFileForInput(Location location, String className, JavaFileObject.Kind kind)
             throws IOException {
         if (location == StandardLocation.SOURCE_PATH) {
+            // FileStore only contains .java files
+            if (kind != JavaFileObject.Kind.SOURCE) return null;
             var packageName = Parser.mostName(className);
             var simpleClassName = Parser.lastName(className);
-            for (var f : FileStore.list(packageName)) {
-                if (f.getFileName().toString().equals(simpleClassName + kind.extension)) return new SourceFileObject(f);
-            }
-            return null;
+            return FileStore.findDeclaringFile(packageName, simpleClassName).map(this::asJavaFileObject).orElse(null);
         }
         return super.getJavaFileForInput(location, className, kind);
     }
@@ -102,7 +130,9 @@ class SourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManage
 
     @Override
     public boolean contains(Location location, FileObject file) throws IOException {
-        if (location == StandardLocation.SOURCE_PATH) {
+        if (file instanceof StubCache.Stub) {
+            return location == StandardLocation.CLASS_PATH;
+        } else if (location == StandardLocation.SOURCE_PATH) {
             var source = (SourceFileObject) file;
             return FileStore.contains(source.path);
         } else {
@@ -13,6 +13,8 @@ class SourceFileObject implements JavaFileObject {
     final Path path;
     /** contents is the text in this file, or null if we should use the text in FileStore */
     final String contents;
+    /** If true, javac only needs the signatures in this file, so we hide the bodies of its methods */
+    final boolean signaturesOnly;
 
     SourceFileObject(URI uri) {
         this(Paths.get(uri));
@@ -27,9 +29,19 @@ class SourceFileObject implements JavaFileObject {
     }
 
     SourceFileObject(Path path, String contents) {
+        this(path, contents, false);
+    }
+
+    private SourceFileObject(Path path, String contents, boolean signaturesOnly) {
         if (!FileStore.isJavaFile(path)) throw new RuntimeException(path + " is not a java source");
         this.path = path;
         this.contents = contents;
+        this.signaturesOnly = signaturesOnly;
+    }
+
+    /** The current contents of `path`, with method bodies erased by Pruner.eraseBodies(_) when javac reads them */
+    static SourceFileObject signaturesOnly(Path path) {
+        return new SourceFileObject(path, null, true);
     }
 
     @Override
@@ -81,6 +93,10 @@ class SourceFileObject implements JavaFileObject {
 
     @Override
     public InputStream openInputStream() throws IOException {
+        if (signaturesOnly) {
+            var bytes = Pruner.eraseBodies(path).getBytes();
+            return new ByteArrayInputStream(bytes);
+        }
         if (contents != null) {
             var bytes = contents.getBytes();
             return new ByteArrayInputStream(bytes);
@@ -95,6 +111,9 @@ class SourceFileObject implements JavaFileObject {
 
     @Override
     public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+        if (signaturesOnly) {
+            return new StringReader(Pruner.eraseBodies(path));
+        }
         if (contents != null) {
             return new StringReader(contents);
         }
@@ -103,6 +122,9 @@ class SourceFileObject implements JavaFileObject {
 
     @Override
     public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+        if (signaturesOnly) {
+            return Pruner.eraseBodies(path);
+        }
         if (contents != null) {
             return contents;
         }
@@ -0,0 +1,230 @@
+package org.javacs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The package declaration and imports at the top of a source file. They're found in one pass by a tiny lexer that
+ * understands whitespace, comments, annotations and qualified names, and stops at the first token that can't be part of
+ * the header, whether that's `class`, `interface`, `enum`, `record`, `@interface` or a modifier.
+ */
+class SourceHeader {
+    /** The declared package, or "" if there is no package declaration */
+    final String packageName;
+    /** Names from `import a.b.C;` and `import a.b.*;`, like a.b.C and a.b.* */
+    final List<String> imports;
+    /** Names from `import static a.b.C.d;` and `import static a.b.C.*;`, like a.b.C.d and a.b.C.* */
+    final List<String> staticImports;
+
+    private SourceHeader(String packageName, List<String> imports, List<String> staticImports) {
+        this.packageName = packageName;
+        this.imports = imports;
+        this.staticImports = staticImports;
+    }
+
+    private static class Entry {
+        /** Version in the editor, or -1 if the file wasn't open */
+        final int version;
+        /** Modified time on disk, or null if the file was open */
+        final Instant modified;
+
+        final SourceHeader header;
+
+        Entry(int version, Instant modified, SourceHeader header) {
+            this.version = version;
+            this.modified = modified;
+            this.header = header;
+        }
+    }
+
+    private static final ConcurrentHashMap<Path, Entry> cache = new ConcurrentHashMap<>();
+
+    /** The header of the current version of `file`, which must be in FileStore */
+    static SourceHeader of(Path file) {
+        var uri = file.toUri();
+        var version = FileStore.version(uri);
+        var modified = version == -1 ? FileStore.modified(file) : null;
+        var existing = cache.get(file);
+        if (existing != null && existing.version == version && Objects.equals(existing.modified, modified)) {
+            return existing.header;
+        }
+        var header = version == -1 ? parse(Parser.read(file)) : parse(FileStore.contents(uri));
+        cache.put(file, new Entry(version, modified, header));
+        return header;
+    }
+
+    static void remove(Path file) {
+        cache.remove(file);
+    }
+
+    static SourceHeader parse(String contents) {
+        return parse(StandardCharsets.UTF_8.encode(contents));
+    }
+
+    /** Lex the header of the UTF-8 source in `bytes`, from position 0 to limit */
+    static SourceHeader parse(ByteBuffer bytes) {
+        return new Lexer(bytes).header();
+    }
+
+    private static class Lexer {
+        final ByteBuffer bytes;
+        final int limit;
+        int i;
+        final StringBuilder name = new StringBuilder();
+
+        Lexer(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.limit = bytes.limit();
+        }
+
+        SourceHeader header() {
+            var packageName = "";
+            var imports = new ArrayList<String>();
+            var staticImports = new ArrayList<String>();
+            while (true) {
+                skipSpace();
+                if (i >= limit) break;
+                var b = bytes.get(i);
+                if (b == ';') {
+                    i++;
+                } else if (b == '@') {
+                    // Package annotations are allowed in package-info.java, but @interface starts a declaration
+                    i++;
+                    skipSpace();
+                    if (keyword("interface")) break;
+                    if (qualifiedName() == null) break;
+                    if (i < limit && bytes.get(i) == '(' && !skipParens()) break;
+                } else if (keyword("package")) {
+                    var found = declaredName();
+                    if (found == null) break;
+                    packageName = found;
+                } else if (keyword("import")) {
+                    skipSpace();
+                    var isStatic = keyword("static");
+                    var found = declaredName();
+                    if (found == null) break;
+                    if (isStatic) staticImports.add(found);
+                    else imports.add(found);
+                } else {
+                    // class, interface, enum, record, a modifier, or something we don't understand
+                    break;
+                }
+            }
+            return new SourceHeader(packageName, imports, staticImports);
+        }
+
+        /** Skip whitespace and comments */
+        void skipSpace() {
+            while (i < limit) {
+                var b = bytes.get(i);
+                if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+                    i++;
+                } else if (b == '/' && i + 1 < limit && bytes.get(i + 1) == '/') {
+                    while (i < limit && bytes.get(i) != '\n') i++;
+                } else if (b == '/' && i + 1 < limit && bytes.get(i + 1) == '*') {
+                    i += 2;
+                    while (i < limit && !(bytes.get(i) == '*' && i + 1 < limit && bytes.get(i + 1) == '/')) i++;
+                    i += 2;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /** If the next token is `word`, consume it */
+        boolean keyword(String word) {
+            var end = i + word.length();
+            if (end > limit) return false;
+            for (var j = 0; j < word.length(); j++) {
+                if (bytes.get(i + j) != word.charAt(j)) return false;
+            }
+            if (end < limit && isIdentifierPart(bytes.get(end))) return false;
+            i = end;
+            return true;
+        }
+
+        /** Read a name like a.b.C or a.b.*, allowing whitespace and comments between its parts, or return null */
+        String qualifiedName() {
+            name.setLength(0);
+            while (true) {
+                skipSpace();
+                if (i >= limit) return null;
+                var b = bytes.get(i);
+                if (b == '*') {
+                    name.append('*');
+                    i++;
+                } else if (isIdentifierPart(b)) {
+                    var start = i;
+                    while (i < limit && isIdentifierPart(bytes.get(i))) i++;
+                    appendIdentifier(start, i);
+                } else {
+                    return null;
+                }
+                skipSpace();
+                if (i >= limit || bytes.get(i) != '.') return name.toString();
+                name.append('.');
+                i++;
+            }
+        }
+
+        /** Read a name followed by ';', or return null */
+        String declaredName() {
+            var found = qualifiedName();
+            if (found == null || i >= limit || bytes.get(i) != ';') return null;
+            i++;
+            return found;
+        }
+
+        /** Skip a parenthesized annotation argument list, including any string or char literals inside it */
+        boolean skipParens() {
+            var depth = 0;
+            while (i < limit) {
+                var b = bytes.get(i++);
+                if (b == '(') {
+                    depth++;
+                } else if (b == ')') {
+                    if (--depth == 0) return true;
+                } else if (b == '"' || b == '\'') {
+                    while (i < limit && bytes.get(i) != b) {
+                        if (bytes.get(i) == '\\') i++;
+                        i++;
+                    }
+                    i++;
+                }
+            }
+            return false;
+        }
+
+        void appendIdentifier(int start, int end) {
+            for (var j = start; j < end; j++) {
+                if (bytes.get(j) < 0) {
+                    // Identifiers are almost always ASCII, so we only decode when we have to
+                    var slice = bytes.duplicate();
+                    slice.position(start);
+                    slice.limit(end);
+                    name.append(StandardCharsets.UTF_8.decode(slice));
+                    return;
+                }
+            }
+            for (var j = start; j < end; j++) {
+                name.append((char) bytes.get(j));
+            }
+        }
+
+        /** Bytes of multi-byte UTF-8 characters are negative, and we assume they're letters */
+        static boolean isIdentifierPart(byte b) {
+            return b < 0
+                    || (b >= 'a' && b <= 'z')
+                    || (b >= 'A' && b <= 'Z')
+                    || (b >= '0' && b <= '9')
+                    || b == '_'
+                    || b == '$';
+        }
+    }
+}
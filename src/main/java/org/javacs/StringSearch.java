@@ -1,6 +1,12 @@
 package org.javacs;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 // Translated from https://golang.org/src/strings/search.go
 
@@ -170,6 +176,136 @@ class StringSearch {
         return i;
     }
 
+    /**
+     * AnyWord finds any of a set of words in a source text in a single pass, using the Aho-Corasick algorithm:
+     * https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm
+     *
+     * <p>Like nextWord, a match only counts if it isn't part of a longer identifier.
+     */
+    static class AnyWord {
+        private final byte[][] words;
+        /** byteClass[b + 128] is the column of b in transitions, or 0 if b doesn't appear in any word */
+        private final int[] byteClass = new int[256];
+
+        private final int classes;
+        /** transitions[state * classes + byteClass] is the next state; every state has every transition */
+        private final int[] transitions;
+        /** matches[state] is the index of every word that ends at state, including via failure links */
+        private final int[][] matches;
+
+        AnyWord(Collection<String> words) {
+            this.words = words.stream().filter(w -> !w.isEmpty()).map(String::getBytes).toArray(byte[][]::new);
+            // Number the distinct bytes that appear in words
+            var nextClass = 1;
+            for (var w : this.words) {
+                for (var b : w) {
+                    if (byteClass[b + 128] == 0) byteClass[b + 128] = nextClass++;
+                }
+            }
+            this.classes = nextClass;
+            // Build the trie of words
+            var trie = new ArrayList<int[]>();
+            var ends = new ArrayList<List<Integer>>();
+            trie.add(new int[classes]);
+            ends.add(new ArrayList<>());
+            for (var w = 0; w < this.words.length; w++) {
+                var state = 0;
+                for (var b : this.words[w]) {
+                    var c = byteClass[b + 128];
+                    if (trie.get(state)[c] == 0) {
+                        trie.get(state)[c] = trie.size();
+                        trie.add(new int[classes]);
+                        ends.add(new ArrayList<>());
+                    }
+                    state = trie.get(state)[c];
+                }
+                ends.get(state).add(w);
+            }
+            // Fill in missing transitions breadth-first, following failure links
+            var fail = new int[trie.size()];
+            var queue = new ArrayDeque<Integer>();
+            for (var c = 1; c < classes; c++) {
+                var next = trie.get(0)[c];
+                if (next != 0) queue.add(next);
+            }
+            while (!queue.isEmpty()) {
+                var state = queue.remove();
+                ends.get(state).addAll(ends.get(fail[state]));
+                for (var c = 1; c < classes; c++) {
+                    var next = trie.get(state)[c];
+                    if (next != 0) {
+                        fail[next] = trie.get(fail[state])[c];
+                        queue.add(next);
+                    } else {
+                        trie.get(state)[c] = trie.get(fail[state])[c];
+                    }
+                }
+            }
+            // Flatten into arrays
+            this.transitions = new int[trie.size() * classes];
+            this.matches = new int[trie.size()][];
+            for (var state = 0; state < trie.size(); state++) {
+                System.arraycopy(trie.get(state), 0, transitions, state * classes, classes);
+                matches[state] = ends.get(state).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        /** The start of the word that ends first in text, or -1 if there are none */
+        int nextWord(ByteBuffer text) {
+            var found = new int[1];
+            return scan(text, found, true);
+        }
+
+        /** All the words that appear in text */
+        Set<String> wordsIn(ByteBuffer text) {
+            var found = new int[words.length];
+            scan(text, found, false);
+            var result = new HashSet<String>();
+            for (var w = 0; w < words.length; w++) {
+                if (found[w] > 0) result.add(new String(words[w]));
+            }
+            return result;
+        }
+
+        Set<String> wordsIn(String text) {
+            return wordsIn(ByteBuffer.wrap(text.getBytes()));
+        }
+
+        int nextWord(String text) {
+            return nextWord(ByteBuffer.wrap(text.getBytes()));
+        }
+
+        /**
+         * Run the automaton over text. If stopAtFirst, return the start of the first match. Otherwise count matches of
+         * each word in found, and stop once every word has been found.
+         */
+        private int scan(ByteBuffer text, int[] found, boolean stopAtFirst) {
+            var remaining = words.length;
+            if (remaining == 0) return -1;
+            var state = 0;
+            for (var i = text.position(); i < text.limit(); i++) {
+                var b = text.get(i);
+                state = transitions[state * classes + byteClass[b + 128]];
+                for (var w : matches[state]) {
+                    var start = i - words[w].length + 1;
+                    if (!isWordBoundary(text, start - 1) || !isWordBoundary(text, i + 1)) continue;
+                    if (stopAtFirst) return start;
+                    if (found[w]++ == 0 && --remaining == 0) return start;
+                }
+            }
+            return -1;
+        }
+
+        /** Is the byte at offset outside of any identifier? Non-ASCII bytes might be part of an identifier. */
+        private static boolean isWordBoundary(ByteBuffer text, int offset) {
+            if (offset < text.position() || offset >= text.limit()) return true;
+            var b = text.get(offset);
+            if (b < 0) return false;
+            var c = (char) b;
+            return !(Character.isLetterOrDigit(c) || c == '$' || c == '_');
+        }
+    }
+
     private static class Slice {
         private final byte[] target;
         private int from, until;
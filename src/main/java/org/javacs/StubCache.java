@@ -0,0 +1,333 @@
+package org.javacs;
+
+import com.sun.source.util.JavacTask;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Class files compiled from the signatures of workspace sources, kept on disk between sessions. When javac needs a
+ * source that isn't in the batch, SourceFileManager offers it the stubs instead, so javac reads a class file rather
+ * than parsing and attributing the source. Stubs are keyed by a hash of the class path and the contents of the source
+ * they came from, and we only keep the stubs of the current contents of each source.
+ *
+ * <p>A stub records the types in its signatures as they resolved when we compiled it, so it can go stale without its
+ * source changing. For example, if another file adds a class that shadows an imported or same-package name, the stub
+ * still refers to the old class until its own source is edited. We compile missing stubs a few at a time in the
+ * background with updateInBackground(_, _), while the server is idle.
+ */
+class StubCache {
+    /** A class file in the cache, which javac reads instead of the source it was compiled from */
+    static class Stub extends SimpleJavaFileObject {
+        final Path path;
+        final String binaryName;
+
+        /** `path` is `root`/package/dirs/Name.class, like the output directory of javac */
+        Stub(Path root, Path path) {
+            super(path.toUri(), Kind.CLASS);
+            this.path = path;
+            var relative = root.relativize(path).toString();
+            var className = relative.substring(0, relative.length() - Kind.CLASS.extension.length());
+            this.binaryName = className.replace(root.getFileSystem().getSeparator(), ".");
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            return Files.newInputStream(path);
+        }
+
+        @Override
+        public long getLastModified() {
+            try {
+                return Files.getLastModifiedTime(path).toMillis();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class Entry {
+        final Instant modified;
+        final String key;
+        /** The stubs compiled from this version of the file, or null if we haven't compiled them yet */
+        final List<Stub> stubs;
+
+        Entry(Instant modified, String key, List<Stub> stubs) {
+            this.modified = modified;
+            this.key = key;
+            this.stubs = stubs;
+        }
+    }
+
+    /** Stubs of each version of `source` go in their own sub-directory of this, so we can delete the old ones */
+    private static Path sourceDir(Path source) {
+        return dir.resolve(CacheDir.hash(source.toString()));
+    }
+
+    /** Where we keep stubs for the current class path, or null if there is no cache */
+    private static volatile Path dir;
+
+    private static final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    /** Keys of files that didn't compile, which we won't try again until they change */
+    private static final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Keep stubs compiled against `classPath` in `cacheDir`. Stubs compiled by another JDK, or with other options, go
+     * in a different directory, because javac can't read class files from a newer JDK.
+     */
+    static void setDirectory(Path cacheDir, Set<Path> classPath) {
+        var key = new ArrayList<String>();
+        key.add(Runtime.version().toString());
+        // Sort the class path, so the same class path always has the same key
+        key.addAll(options(new TreeSet<>(classPath)));
+        dir = cacheDir.resolve("stubs").resolve(CacheDir.hash(String.join("\n", key)));
+        entries.clear();
+        failed.clear();
+    }
+
+    /** Stop using stubs, for example because the workspace has no cache directory */
+    static void clear() {
+        dir = null;
+        entries.clear();
+        failed.clear();
+    }
+
+    /** The stubs compiled from the current version of `source`, if we have them */
+    static Optional<List<Stub>> stubs(Path source) {
+        if (dir == null) return Optional.empty();
+        // Open documents change with every keystroke, and their unsaved edits aren't reflected in FileStore.modified
+        if (FileStore.isOpen(source)) return Optional.empty();
+        return Optional.ofNullable(entry(source).stubs);
+    }
+
+    private static Entry entry(Path source) {
+        var modified = FileStore.modified(source);
+        var entry = entries.get(source);
+        if (entry != null && entry.modified.equals(modified)) return entry;
+        var key = CacheDir.hash(FileStore.contents(source));
+        entry = new Entry(modified, key, read(sourceDir(source).resolve(key)));
+        entries.put(source, entry);
+        return entry;
+    }
+
+    private static List<Stub> read(Path stubDir) {
+        if (!Files.isDirectory(stubDir)) return null;
+        try (var walk = Files.walk(stubDir)) {
+            return walk.filter(Files::isRegularFile).map(f -> new Stub(stubDir, f)).collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to read " + stubDir, e);
+            return null;
+        }
+    }
+
+    /** Compiles stubs on its own thread, because hashing and compiling a large workspace takes a while */
+    private static final ExecutorService background =
+            Executors.newSingleThreadExecutor(
+                    task -> {
+                        var thread = new Thread(task, "stubs");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private static Future<?> running;
+
+    /**
+     * Compile stubs for the workspace sources that don't have them yet on a background thread, until there are none
+     * left or `interrupted` returns true. Does nothing if the last update is still running.
+     */
+    static synchronized void updateInBackground(JavaCompilerService compiler, BooleanSupplier interrupted) {
+        if (dir == null || (running != null && !running.isDone())) return;
+        running =
+                background.submit(
+                        () -> {
+                            try {
+                                while (!interrupted.getAsBoolean() && update(compiler, interrupted))
+                                    ;
+                            } catch (RuntimeException e) {
+                                LOG.log(Level.WARNING, "Failed to compile stubs", e);
+                            }
+                        });
+    }
+
+    /**
+     * Compile stubs for some of the workspace sources that don't have them yet, stopping early if `cancelled` returns
+     * true. Returns false if there was nothing left to do.
+     */
+    static boolean update(JavaCompilerService compiler, BooleanSupplier cancelled) {
+        if (dir == null) return false;
+        var open = FileStore.openFiles();
+        var missing = new ArrayList<Path>();
+        var keys = new HashMap<URI, String>();
+        for (var file : FileStore.all()) {
+            // Hashing a large workspace for the first time takes a while
+            if (cancelled.getAsBoolean()) return true;
+            // module-info.java would turn the task into a modular compilation
+            if (open.contains(file) || file.endsWith("module-info.java")) continue;
+            var entry = entry(file);
+            if (entry.stubs != null || failed.contains(entry.key)) continue;
+            missing.add(file);
+            keys.put(file.toUri(), entry.key);
+            if (missing.size() == CHUNK) break;
+        }
+        if (missing.isEmpty()) return false;
+        try {
+            compile(compiler, missing, keys, cancelled);
+        } catch (CancellationException e) {
+            LOG.info("...cancelled compiling stubs");
+        }
+        return true;
+    }
+
+    /** How many stubs we compile in one javac task */
+    private static final int CHUNK = 50;
+
+    private static List<String> options(Set<Path> classPath) {
+        var options = JavaCompilerService.options(classPath);
+        // Compile only the stubs we asked for, and keep parameter names so signature help still shows them
+        options.add("-implicit:none");
+        options.add("-parameters");
+        return options;
+    }
+
+    private static void compile(
+            JavaCompilerService compiler, List<Path> files, Map<URI, String> keys, BooleanSupplier cancelled) {
+        LOG.info(String.format("Compile stubs for %d files...", files.size()));
+        var sources = new ArrayList<JavaFileObject>();
+        for (var f : files) sources.add(SourceFileObject.signaturesOnly(f));
+        var output = new HashMap<URI, Map<String, ByteArrayOutputStream>>();
+        var errors = new HashSet<URI>();
+        var fileManager = new SourceFileManager();
+        var capture =
+                new ForwardingJavaFileManager<JavaFileManager>(fileManager) {
+                    @Override
+                    public JavaFileObject getJavaFileForOutput(
+                            Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                        var bytes = new ByteArrayOutputStream();
+                        output.computeIfAbsent(sibling.toUri(), __ -> new HashMap<>()).put(className, bytes);
+                        return new SimpleJavaFileObject(URI.create("stub:///" + className), kind) {
+                            @Override
+                            public OutputStream openOutputStream() {
+                                return bytes;
+                            }
+                        };
+                    }
+                };
+        var options = options(compiler.classPath);
+        DiagnosticListener<JavaFileObject> onError =
+                d -> {
+                    if (d.getKind() == Diagnostic.Kind.ERROR && d.getSource() != null) {
+                        errors.add(d.getSource().toUri());
+                    }
+                };
+        var task = (JavacTask) compiler.compiler.getTask(null, capture, onError, options, List.of(), sources);
+        task.addTaskListener(new Cancellation(cancelled));
+        try {
+            task.call();
+        } catch (RuntimeException e) {
+            // javac wraps exceptions from listeners
+            if (cancelled.getAsBoolean()) throw new CancellationException();
+            throw e;
+        } finally {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to close file manager", e);
+            }
+        }
+        // javac doesn't generate anything if any file has errors, so files without errors will be tried again later
+        for (var f : files) {
+            var uri = f.toUri();
+            var key = keys.get(uri);
+            if (errors.contains(uri)) {
+                failed.add(key);
+            } else if (output.containsKey(uri)) {
+                save(f, key, output.get(uri));
+            } else if (errors.isEmpty()) {
+                // A file with no classes, like package-info.java
+                failed.add(key);
+            }
+        }
+        LOG.info(String.format("...%d files had errors", errors.size()));
+    }
+
+    private static void save(Path source, String key, Map<String, ByteArrayOutputStream> classes) {
+        var parent = sourceDir(source);
+        var target = parent.resolve(key);
+        try {
+            Files.createDirectories(parent);
+            // Write to a temporary directory first, so another session never sees half a set of stubs
+            var tmp = Files.createTempDirectory(parent, "tmp");
+            for (var className : classes.keySet()) {
+                // Lay out class files by package, like javac's output directory, so Stub can tell their binary names
+                var file = tmp.resolve(className.replace('.', '/') + JavaFileObject.Kind.CLASS.extension);
+                Files.createDirectories(file.getParent());
+                Files.write(file, classes.get(className).toByteArray());
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Another session saved the same stubs first
+                delete(tmp);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save stubs for " + source, e);
+            return;
+        }
+        entries.remove(source);
+        prune(parent, key);
+    }
+
+    /** Delete the stubs of old versions of a source, leaving other sessions' temporary directories alone */
+    private static void prune(Path parent, String key) {
+        try (var list = Files.list(parent)) {
+            for (var old : list.collect(Collectors.toList())) {
+                var name = old.getFileName().toString();
+                if (name.equals(key) || name.startsWith("tmp")) continue;
+                delete(old);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to delete old stubs in " + parent, e);
+        }
+    }
+
+    private static void delete(Path tree) throws IOException {
+        try (var walk = Files.walk(tree)) {
+            for (var p : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -0,0 +1,503 @@
+package org.javacs;
+
+import com.sun.source.util.TreePath;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.javacs.lsp.*;
+
+/**
+ * An index of every class, method and field declared in the workspace, for workspace/symbol. Files are re-parsed
+ * lazily, the next time someone searches after they have been modified on disk or edited in the editor.
+ *
+ * <p>All the static state is guarded by the SymbolIndex.class lock, which is only held to look up or publish entries.
+ * Files are parsed outside the lock, and each file is published as soon as it has been parsed, so a search while the
+ * workspace is being indexed in the background doesn't have to wait for all of it.
+ */
+class SymbolIndex {
+    private static class Symbol {
+        final String name, container;
+        final int kind;
+        final Path file;
+        final int startLine, startCharacter, endLine, endCharacter;
+
+        Symbol(
+                String name,
+                String container,
+                int kind,
+                Path file,
+                int startLine,
+                int startCharacter,
+                int endLine,
+                int endCharacter) {
+            this.name = name;
+            this.container = container;
+            this.kind = kind;
+            this.file = file;
+            this.startLine = startLine;
+            this.startCharacter = startCharacter;
+            this.endLine = endLine;
+            this.endCharacter = endCharacter;
+        }
+
+        SymbolInformation info() {
+            var i = new SymbolInformation();
+            i.name = name;
+            i.containerName = container;
+            i.kind = kind;
+            var range =
+                    new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter));
+            i.location = new Location(file.toUri(), range);
+            return i;
+        }
+    }
+
+    private static class Entry {
+        final Instant modified;
+        /** FileStore.version(_) when this entry was indexed, or -1 if it was read from disk */
+        final int version;
+
+        final Symbol[] symbols;
+
+        Entry(Instant modified, int version, Symbol[] symbols) {
+            this.modified = modified;
+            this.version = version;
+            this.symbols = symbols;
+        }
+    }
+
+    private static final Map<Path, Entry> files = new HashMap<>();
+    /** Files that some thread is parsing right now, which other threads leave to it */
+    private static final Set<Path> indexing = new HashSet<>();
+    /** FileStore.changes() the last time search(_, _) checked every file in the workspace */
+    private static volatile long checkedChanges = -1;
+    /**
+     * byInitial[c] is every symbol with a word starting with c, where the words of FooBar are Foo and Bar. Queries
+     * are matched by Parser.matchesTitleCase, so the first character of a query always matches the start of a word.
+     */
+    private static final Map<Character, Set<Symbol>> byInitial = new HashMap<>();
+
+    /** The best `limit` symbols matching `query`, best first */
+    static List<SymbolInformation> search(String query, int limit) {
+        var started = Instant.now();
+        // If nothing on disk has changed since the last search, only open documents can be out of date
+        var changes = FileStore.changes();
+        if (changes != checkedChanges) {
+            var workspace = FileStore.all();
+            update(workspace);
+            synchronized (SymbolIndex.class) {
+                retainAll(workspace);
+                checkedChanges = changes;
+            }
+        } else {
+            update(FileStore.openFiles());
+        }
+        List<Ranked> sorted;
+        var unindexed = new ArrayList<Path>();
+        synchronized (SymbolIndex.class) {
+            sorted = best(query, limit);
+            for (var file : indexing) {
+                if (!files.containsKey(file)) unindexed.add(file);
+            }
+        }
+        if (!unindexed.isEmpty() && !query.isEmpty()) {
+            sorted.addAll(searchUnindexed(unindexed, query));
+            sorted.sort(BY_RANK);
+            if (sorted.size() > limit) sorted = sorted.subList(0, limit);
+        }
+        var result = new ArrayList<SymbolInformation>();
+        for (var r : sorted) {
+            result.add(r.symbol.info());
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("Found %d symbols matching `%s` in %,d ms", result.size(), query, elapsed));
+        return result;
+    }
+
+    /** The best `limit` indexed symbols matching `query`, best first */
+    private static List<Ranked> best(String query, int limit) {
+        // Keep the best `limit` matches in a heap, with the worst match on top
+        var best = new PriorityQueue<Ranked>(BY_RANK.reversed());
+        var matches = new ArrayList<Symbol>();
+        for (var s : candidates(query)) {
+            var rank = rank(s, query);
+            if (rank == NO_MATCH) continue;
+            matches.add(s);
+            var ranked = new Ranked(s, rank);
+            if (best.size() < limit) best.add(ranked);
+            else if (limit > 0 && BY_RANK.compare(ranked, best.peek()) < 0) {
+                best.remove();
+                best.add(ranked);
+            }
+        }
+        // Remember every match, because the user is probably still typing
+        lastQuery = query;
+        lastMatches = matches;
+        lastGeneration = generation;
+        var sorted = new ArrayList<Ranked>(best);
+        sorted.sort(BY_RANK);
+        return sorted;
+    }
+
+    /**
+     * Search files that another thread is indexing for the first time, for example while the workspace is indexed in
+     * the background at startup. Rather than wait for them, we scan their bytes for words matching `query`, and only
+     * parse the few files that contain one.
+     */
+    private static List<Ranked> searchUnindexed(List<Path> unindexed, String query) {
+        var started = Instant.now();
+        var open = FileStore.openFiles();
+        var matching =
+                Parser.filter(unindexed, file -> containsWordMatching(file, query, open), ForkJoinPool.commonPool());
+        var found = new ArrayList<Ranked>();
+        for (var file : matching) {
+            try {
+                var root = Parser.parse(new SourceFileObject(file));
+                for (var s : symbols(file, Parser.findSymbolsMatching(root, query))) {
+                    var rank = rank(s, query);
+                    if (rank != NO_MATCH) found.add(new Ranked(s, rank));
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to search symbols in " + file, e);
+            }
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(
+                String.format(
+                        "...searched %,d files that are still being indexed, %,d contain a word matching `%s`, in %,d ms",
+                        unindexed.size(), matching.size(), query, elapsed));
+        return found;
+    }
+
+    private static boolean containsWordMatching(Path file, String query, Set<Path> open) {
+        try {
+            if (open.contains(file)) return Parser.matchesTitleCase(FileStore.contents(file), query);
+            return Parser.containsWordMatching(file, query);
+        } catch (RuntimeException e) {
+            // file was probably deleted after it was claimed
+            return false;
+        }
+    }
+
+    private static class Ranked {
+        final Symbol symbol;
+        final int rank;
+
+        Ranked(Symbol symbol, int rank) {
+            this.symbol = symbol;
+            this.rank = rank;
+        }
+    }
+
+    private static final Comparator<Ranked> BY_RANK =
+            Comparator.<Ranked>comparingInt(r -> r.rank)
+                    .thenComparingInt(r -> kindRank(r.symbol.kind))
+                    .thenComparingInt(r -> r.symbol.name.length())
+                    .thenComparing(r -> r.symbol.name);
+
+    /** The previous query, and every symbol that matched it */
+    private static String lastQuery;
+
+    private static List<Symbol> lastMatches;
+    /** generation when lastMatches was computed */
+    private static long lastGeneration = -1;
+    /** Incremented every time a symbol is added or removed */
+    private static long generation;
+
+    /**
+     * Every symbol that could match query. Anything that matches query must also match every prefix of query, so if
+     * query extends the last query, and nothing has been indexed since, we only need to re-check the last matches.
+     */
+    private static Iterable<Symbol> candidates(String query) {
+        if (lastQuery != null && query.startsWith(lastQuery) && lastGeneration == generation) {
+            return lastMatches;
+        }
+        if (query.isEmpty()) {
+            var all = new ArrayList<Symbol>();
+            for (var entry : files.values()) {
+                all.addAll(List.of(entry.symbols));
+            }
+            return all;
+        }
+        return byInitial.getOrDefault(Character.toLowerCase(query.charAt(0)), Set.of());
+    }
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    /** How well does `query` match the name of `s`? Lower is better. */
+    private static int rank(Symbol s, String query) {
+        if (s.name.equals(query)) return 0;
+        if (s.name.equalsIgnoreCase(query)) return 1;
+        if (s.name.startsWith(query)) return 2;
+        if (s.name.regionMatches(true, 0, query, 0, query.length())) return 3;
+        if (Parser.matchesTitleCase(s.name, query)) return 4;
+        return NO_MATCH;
+    }
+
+    /** Prefer types to members when names match equally well */
+    private static int kindRank(int kind) {
+        switch (kind) {
+            case SymbolKind.Class:
+            case SymbolKind.Interface:
+            case SymbolKind.Enum:
+                return 0;
+            case SymbolKind.Method:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Re-parse any file in `candidates` that has changed since we last looked at it, except files another thread is
+     * already parsing
+     */
+    static void update(Collection<Path> candidates) {
+        var started = Instant.now();
+        var outOfDate = new ArrayList<Path>();
+        var open = FileStore.openFiles();
+        synchronized (SymbolIndex.class) {
+            for (var file : candidates) {
+                if (indexing.contains(file)) continue;
+                try {
+                    var modified = FileStore.modified(file);
+                    var version = open.contains(file) ? FileStore.version(file.toUri()) : -1;
+                    var existing = files.get(file);
+                    if (existing != null && existing.modified.equals(modified) && existing.version == version) continue;
+                    indexing.add(file);
+                    outOfDate.add(file);
+                } catch (RuntimeException e) {
+                    // file was probably deleted after candidates was listed
+                    LOG.log(Level.WARNING, "Failed to index symbols in " + file, e);
+                    remove(file);
+                }
+            }
+        }
+        var count = 0;
+        for (var file : outOfDate) {
+            Entry entry = null;
+            try {
+                // Check modified and version before we parse, so if file changes while we're parsing it,
+                // the entry is out of date and file will be parsed again
+                var modified = FileStore.modified(file);
+                var version = open.contains(file) ? FileStore.version(file.toUri()) : -1;
+                entry = new Entry(modified, version, parse(file));
+                count++;
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to index symbols in " + file, e);
+            } finally {
+                // Publish each file as soon as it's parsed, so searches see the index fill up
+                synchronized (SymbolIndex.class) {
+                    indexing.remove(file);
+                    if (entry != null) put(file, entry);
+                    else remove(file);
+                }
+            }
+        }
+        if (count > 0) {
+            var elapsed = Duration.between(started, Instant.now()).toMillis();
+            LOG.info(String.format("...indexed symbols in %,d files in %,d ms", count, elapsed));
+        }
+    }
+
+    /** Forget files that are no longer in the workspace */
+    private static void retainAll(Collection<Path> workspace) {
+        if (files.size() <= workspace.size()) return;
+        var keep = new HashSet<Path>(workspace);
+        for (var file : new ArrayList<Path>(files.keySet())) {
+            if (!keep.contains(file)) remove(file);
+        }
+    }
+
+    private static Symbol[] parse(Path file) {
+        var root = Parser.parse(new SourceFileObject(file));
+        return symbols(file, Parser.findSymbolsMatching(root, ""));
+    }
+
+    private static Symbol[] symbols(Path file, List<TreePath> paths) {
+        var symbols = new Symbol[paths.size()];
+        for (var i = 0; i < symbols.length; i++) {
+            var path = paths.get(i);
+            var info = JavaLanguageServer.asSymbolInformation(path, Parser.location(path));
+            var start = info.location.range.start;
+            var end = info.location.range.end;
+            symbols[i] =
+                    new Symbol(
+                            info.name,
+                            info.containerName,
+                            info.kind,
+                            file,
+                            start.line,
+                            start.character,
+                            end.line,
+                            end.character);
+        }
+        return symbols;
+    }
+
+    static synchronized void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        generation++;
+        for (var s : existing.symbols) {
+            for (var c : initials(s.name)) {
+                var bucket = byInitial.get(c);
+                bucket.remove(s);
+                if (bucket.isEmpty()) byInitial.remove(c);
+            }
+        }
+    }
+
+    private static void put(Path file, Entry entry) {
+        remove(file);
+        files.put(file, entry);
+        generation++;
+        for (var s : entry.symbols) {
+            for (var c : initials(s.name)) {
+                byInitial.computeIfAbsent(c, __ -> new LinkedHashSet<>()).add(s);
+            }
+        }
+    }
+
+    /** The first letter of each word in name, lowercased */
+    private static Set<Character> initials(String name) {
+        var result = new LinkedHashSet<Character>();
+        if (name.isEmpty()) return result;
+        result.add(Character.toLowerCase(name.charAt(0)));
+        for (var i = 1; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (Character.isUpperCase(c)) result.add(Character.toLowerCase(c));
+        }
+        return result;
+    }
+
+    private static final int MAGIC = 0x4A415659, VERSION = 1;
+
+    /** Save the index to `file`, leaving out files that are open in the editor */
+    static void save(Path file) {
+        // Entries never change once they're created, so we can write a copy of the map without holding the lock
+        Map<Path, Entry> snapshot;
+        synchronized (SymbolIndex.class) {
+            snapshot = new HashMap<>(files);
+        }
+        var stringIds = new HashMap<String, Integer>();
+        var strings = new ArrayList<String>();
+        var saved = new ArrayList<Path>();
+        for (var kv : snapshot.entrySet()) {
+            if (kv.getValue().version != -1) continue;
+            saved.add(kv.getKey());
+            for (var s : kv.getValue().symbols) {
+                for (var string : new String[] {s.name, s.container}) {
+                    if (string != null && !stringIds.containsKey(string)) {
+                        stringIds.put(string, strings.size());
+                        strings.add(string);
+                    }
+                }
+            }
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.size());
+                for (var string : strings) {
+                    out.writeUTF(string);
+                }
+                out.writeInt(saved.size());
+                for (var source : saved) {
+                    var entry = snapshot.get(source);
+                    out.writeUTF(source.toString());
+                    out.writeLong(entry.modified.getEpochSecond());
+                    out.writeInt(entry.modified.getNano());
+                    out.writeInt(entry.symbols.length);
+                    for (var s : entry.symbols) {
+                        out.writeInt(stringIds.get(s.name));
+                        out.writeInt(s.container == null ? -1 : stringIds.get(s.container));
+                        out.writeInt(s.kind);
+                        out.writeInt(s.startLine);
+                        out.writeInt(s.startCharacter);
+                        out.writeInt(s.endLine);
+                        out.writeInt(s.endCharacter);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save symbol index to " + file, e);
+            return;
+        }
+        LOG.info(String.format("Saved symbols in %,d files to %s", saved.size(), file));
+    }
+
+    /** Load an index written by save(_). Entries that are out of date will be re-parsed when they are next used. */
+    static void load(Path file) {
+        if (!Files.exists(file)) return;
+        var loaded = new HashMap<Path, Entry>();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warning(String.format("Ignored symbol index %s in an unknown format", file));
+                return;
+            }
+            var strings = new String[in.readInt()];
+            for (var i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            var fileCount = in.readInt();
+            for (var i = 0; i < fileCount; i++) {
+                var source = Paths.get(in.readUTF());
+                var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                var symbols = new Symbol[in.readInt()];
+                for (var j = 0; j < symbols.length; j++) {
+                    var name = strings[in.readInt()];
+                    var container = in.readInt();
+                    symbols[j] =
+                            new Symbol(
+                                    name,
+                                    container == -1 ? null : strings[container],
+                                    in.readInt(),
+                                    source,
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt());
+                }
+                loaded.put(source, new Entry(modified, -1, symbols));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Failed to load symbol index from " + file, e);
+            return;
+        }
+        synchronized (SymbolIndex.class) {
+            for (var kv : loaded.entrySet()) {
+                // Don't replace anything we've indexed since startup
+                if (!files.containsKey(kv.getKey())) put(kv.getKey(), kv.getValue());
+            }
+        }
+        LOG.info(String.format("Loaded symbols in %,d files from %s", loaded.size(), file));
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
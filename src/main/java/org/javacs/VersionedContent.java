@@ -1,13 +1,23 @@
 package org.javacs;
 
 class VersionedContent {
-    final String content;
+    /** The text of this version of an open document, which FileStore.change(_) never modifies */
+    final PieceTable content;
+
     final int version;
 
-    VersionedContent(String content, int version) {
+    /** Line starts of this version of content, computed the first time someone asks */
+    private LineIndex lines;
+
+    VersionedContent(PieceTable content, int version) {
         this.content = content;
         this.version = version;
     }
 
-    static final VersionedContent EMPTY = new VersionedContent("", -1);
+    synchronized LineIndex lines() {
+        if (lines == null) lines = new LineIndex(content);
+        return lines;
+    }
+
+    static final VersionedContent EMPTY = new VersionedContent(new PieceTable(""), -1);
 }
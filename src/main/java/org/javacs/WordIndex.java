@@ -0,0 +1,258 @@
+package org.javacs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An inverted index from every identifier in the workspace to the files that contain it. Files are re-indexed lazily,
+ * the next time someone asks about them after they have been modified on disk. Files that are open in the editor are
+ * searched directly instead.
+ *
+ * <p>files and postings are guarded by the WordIndex.class lock, which is only held to look up or publish entries.
+ * Files are read and tokenized outside the lock, so indexing the workspace in the background doesn't block lookups.
+ */
+class WordIndex {
+    private static class Entry {
+        final Instant modified;
+        final String[] words;
+
+        Entry(Instant modified, String[] words) {
+            this.modified = modified;
+            this.words = words;
+        }
+    }
+
+    private static final Map<Path, Entry> files = new HashMap<>();
+    private static final Map<String, Set<Path>> postings = new HashMap<>();
+
+    /** The files in `candidates` that contain `word` as an identifier */
+    static List<Path> filesContaining(Collection<Path> candidates, String word) {
+        return filesContainingAny(candidates, List.of(word)).get(word);
+    }
+
+    /** For each of `words`, the files in `candidates` that contain it as an identifier */
+    static Map<String, List<Path>> filesContainingAny(Collection<Path> candidates, Collection<String> words) {
+        update(candidates);
+        var result = new HashMap<String, List<Path>>();
+        for (var word : words) {
+            result.put(word, new ArrayList<>());
+        }
+        var open = FileStore.openFiles();
+        var openCandidates = new ArrayList<Path>();
+        synchronized (WordIndex.class) {
+            for (var file : candidates) {
+                if (open.contains(file)) {
+                    openCandidates.add(file);
+                    continue;
+                }
+                for (var word : words) {
+                    if (postings.getOrDefault(word, Set.of()).contains(file)) result.get(word).add(file);
+                }
+            }
+        }
+        // Open documents change with every keystroke, so rather than re-index them,
+        // search their text for all words in one pass
+        if (!openCandidates.isEmpty()) {
+            var search = new StringSearch.AnyWord(words);
+            for (var file : openCandidates) {
+                for (var word : search.wordsIn(FileStore.contents(file))) {
+                    result.get(word).add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Re-index any file in `candidates` that has changed on disk since we last looked at it */
+    static void update(Collection<Path> candidates) {
+        var started = Instant.now();
+        var outOfDate = new ArrayList<Path>();
+        var open = FileStore.openFiles();
+        synchronized (WordIndex.class) {
+            for (var file : candidates) {
+                if (open.contains(file)) continue;
+                var existing = files.get(file);
+                if (existing == null || !isCurrent(file, existing)) outOfDate.add(file);
+            }
+        }
+        if (outOfDate.isEmpty()) return;
+        // Read and tokenize files in parallel without holding the lock, then publish them all at once
+        var entries = new ConcurrentHashMap<Path, Entry>();
+        ForkJoinPool.commonPool()
+                .submit(() -> outOfDate.parallelStream().forEach(file -> index(file, entries)))
+                .join();
+        synchronized (WordIndex.class) {
+            for (var file : outOfDate) {
+                var entry = entries.get(file);
+                var existing = files.get(file);
+                // Another thread may have indexed a newer version of file while we were reading it
+                if (entry != null && existing != null && existing.modified.isAfter(entry.modified)) continue;
+                if (entry != null) put(file, entry);
+                else remove(file);
+            }
+        }
+        var elapsed = Duration.between(started, Instant.now()).toMillis();
+        LOG.info(String.format("...indexed words in %,d files in %,d ms", entries.size(), elapsed));
+    }
+
+    private static void index(Path file, Map<Path, Entry> entries) {
+        try {
+            var modified = FileStore.modified(file);
+            entries.put(file, new Entry(modified, words(FileStore.contents(file))));
+        } catch (RuntimeException e) {
+            // file was probably deleted after candidates was listed
+            LOG.log(Level.WARNING, "Failed to index words in " + file, e);
+        }
+    }
+
+    private static boolean isCurrent(Path file, Entry entry) {
+        try {
+            return entry.modified.equals(FileStore.modified(file));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    static synchronized void remove(Path file) {
+        var existing = files.remove(file);
+        if (existing == null) return;
+        for (var word : existing.words) {
+            var set = postings.get(word);
+            set.remove(file);
+            if (set.isEmpty()) postings.remove(word);
+        }
+    }
+
+    private static void put(Path file, Entry entry) {
+        remove(file);
+        files.put(file, entry);
+        for (var word : entry.words) {
+            postings.computeIfAbsent(word, __ -> new HashSet<>()).add(file);
+        }
+    }
+
+    /** The distinct identifiers in `contents` */
+    static String[] words(CharSequence contents) {
+        var words = new HashSet<String>();
+        var i = 0;
+        while (i < contents.length()) {
+            if (!Character.isJavaIdentifierStart(contents.charAt(i))) {
+                i++;
+                continue;
+            }
+            var start = i;
+            while (i < contents.length() && Character.isJavaIdentifierPart(contents.charAt(i))) i++;
+            words.add(contents.subSequence(start, i).toString());
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static final int MAGIC = 0x4A415657, VERSION = 1;
+
+    /** Save the index to `file` */
+    static void save(Path file) {
+        // Entries never change once they're created, so we can write a copy of the map without holding the lock
+        Map<Path, Entry> snapshot;
+        synchronized (WordIndex.class) {
+            snapshot = new HashMap<>(files);
+        }
+        var wordIds = new HashMap<String, Integer>();
+        var wordTable = new ArrayList<String>();
+        var saved = new ArrayList<Path>();
+        for (var kv : snapshot.entrySet()) {
+            saved.add(kv.getKey());
+            for (var word : kv.getValue().words) {
+                if (!wordIds.containsKey(word)) {
+                    wordIds.put(word, wordTable.size());
+                    wordTable.add(word);
+                }
+            }
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(wordTable.size());
+                for (var word : wordTable) {
+                    out.writeUTF(word);
+                }
+                out.writeInt(saved.size());
+                for (var source : saved) {
+                    var entry = snapshot.get(source);
+                    out.writeUTF(source.toString());
+                    out.writeLong(entry.modified.getEpochSecond());
+                    out.writeInt(entry.modified.getNano());
+                    out.writeInt(entry.words.length);
+                    for (var word : entry.words) {
+                        out.writeInt(wordIds.get(word));
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save word index to " + file, e);
+            return;
+        }
+        LOG.info(String.format("Saved words in %,d files to %s", saved.size(), file));
+    }
+
+    /** Load an index written by save(_). Entries that are out of date will be re-indexed when they are next used. */
+    static void load(Path file) {
+        if (!Files.exists(file)) return;
+        var loaded = new HashMap<Path, Entry>();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warning(String.format("Ignored word index %s in an unknown format", file));
+                return;
+            }
+            var wordTable = new String[in.readInt()];
+            for (var i = 0; i < wordTable.length; i++) {
+                wordTable[i] = in.readUTF();
+            }
+            var fileCount = in.readInt();
+            for (var i = 0; i < fileCount; i++) {
+                var source = Paths.get(in.readUTF());
+                var modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                var words = new String[in.readInt()];
+                for (var j = 0; j < words.length; j++) {
+                    words[j] = wordTable[in.readInt()];
+                }
+                loaded.put(source, new Entry(modified, words));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Failed to load word index from " + file, e);
+            return;
+        }
+        synchronized (WordIndex.class) {
+            for (var kv : loaded.entrySet()) {
+                // Don't replace anything we've indexed since startup
+                if (!files.containsKey(kv.getKey())) put(kv.getKey(), kv.getValue());
+            }
+        }
+        LOG.info(String.format("Loaded words in %,d files from %s", loaded.size(), file));
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -8,6 +8,7 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -94,11 +95,14 @@ public class LSP {
         var messageBytes = messageText.getBytes(UTF_8);
         var headerText = String.format("Content-Length: %d\r\n\r\n", messageBytes.length);
         var headerBytes = headerText.getBytes(UTF_8);
-        try {
-            client.write(headerBytes);
-            client.write(messageBytes);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // Notifications can be sent from background threads, so don't let messages interleave
+        synchronized (client) {
+            try {
+                client.write(headerBytes);
+                client.write(messageBytes);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -207,12 +211,14 @@ public class LSP {
 
         // Process messages on main thread
         LOG.info("Reading messages from queue...");
+        // How many messages we've taken from pending, so background work can tell if one arrived after it started
+        var taken = new AtomicLong();
         processMessages:
         while (true) {
             Message r;
             try {
-                // Take a break every 1s to check if receive has been closed
-                r = pending.poll(1, TimeUnit.SECONDS);
+                // Take a break every 200ms to check if receive has been closed, and do background work
+                r = pending.poll(200, TimeUnit.MILLISECONDS);
             } catch (Exception e) {
                 LOG.log(Level.SEVERE, e.getMessage(), e);
                 continue;
@@ -222,9 +228,18 @@ public class LSP {
                 LOG.warning("Stream from client has been closed, exiting...");
                 break processMessages;
             }
-            // If poll(_) failed, loop again
-            if (r == null) continue;
+            // If poll(_) failed, the client is idle, so do background work until the next message arrives
+            if (r == null) {
+                try {
+                    var seen = taken.get();
+                    server.doAsyncWork(() -> !pending.isEmpty() || taken.get() != seen);
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, e.getMessage(), e);
+                }
+                continue;
+            }
             // Otherwise, process the new message
+            taken.incrementAndGet();
             try {
                 switch (r.method) {
                     case "initialize":
@@ -242,6 +257,7 @@ public class LSP {
                     case "shutdown":
                         {
                             LOG.warning("Got shutdown message");
+                            server.shutdown();
                             respond(send, r.id, null);
                             break;
                         }
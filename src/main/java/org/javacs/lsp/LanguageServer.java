@@ -2,6 +2,7 @@ package org.javacs.lsp;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
 
 public class LanguageServer {
     public InitializeResult initialize(InitializeParams params) {
@@ -115,4 +116,11 @@ public class LanguageServer {
     public List<DocumentLink> documentLink(DocumentLinkParams params) {
         throw new RuntimeException("Unimplemented");
     }
+
+    /**
+     * Called on the message thread whenever the client has been quiet for a moment. `interrupted` becomes true as soon
+     * as another message arrives, and the server should put off whatever it's doing so it can handle the message. It
+     * stays true once the message has been taken, so work handed off to another thread can check it too.
+     */
+    public void doAsyncWork(BooleanSupplier interrupted) {}
 }
@@ -0,0 +1,60 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkCrawl {
+
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        /** Number of threads used to crawl the workspace */
+        @Param({"1", "2", "4", "8"})
+        public int parallelism;
+
+        /** Total number of .java files in the synthetic workspace */
+        static final int FILES = 10_000;
+
+        /** Number of .java files in each package */
+        static final int FILES_PER_PACKAGE = 50;
+
+        public Path workspaceRoot;
+
+        @Setup
+        public void setup() throws IOException {
+            LOG.info(String.format("Create workspace with %,d files...", FILES));
+            workspaceRoot = Files.createTempDirectory("benchmark-crawl");
+            for (var i = 0; i < FILES; i++) {
+                var pkg = "bench.p" + i / FILES_PER_PACKAGE;
+                var cls = "C" + i;
+                var dir = workspaceRoot.resolve(pkg.replace('.', '/'));
+                Files.createDirectories(dir);
+                var text = "package " + pkg + ";\n\nimport java.util.List;\n\nclass " + cls + " {}\n";
+                Files.writeString(dir.resolve(cls + ".java"), text);
+            }
+        }
+
+        @TearDown
+        public void teardown() throws IOException {
+            try (var walk = Files.walk(workspaceRoot)) {
+                walk.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public void crawl(WorkspaceState state) {
+        FileStore.crawlWorkspace(List.of(state.workspaceRoot), state.parallelism, ReportProgress.EMPTY).join();
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
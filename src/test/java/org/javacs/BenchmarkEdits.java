@@ -0,0 +1,86 @@
+package org.javacs;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.javacs.lsp.*;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkEdits {
+
+    @State(Scope.Benchmark)
+    public static class DocumentState {
+        /** Number of lines in the open document */
+        @Param({"1000", "10000"})
+        public int lines;
+
+        /** Number of single-keystroke edits replayed on each invocation */
+        static final int EDITS = 2000;
+
+        public URI uri = Paths.get("/benchmark/Edits.java").toUri();
+        public String text;
+        public List<DidChangeTextDocumentParams> edits;
+
+        @Setup
+        public void setup() {
+            var build = new StringBuilder("class Edits {\n");
+            for (var i = 0; i < lines; i++) {
+                build.append("    int field").append(i).append(" = ").append(i).append(";\n");
+            }
+            build.append("}\n");
+            text = build.toString();
+            // Type a word at a random place, one character at a time, then delete it again
+            var random = new Random(0);
+            edits = new ArrayList<>();
+            var version = 1;
+            while (edits.size() < EDITS) {
+                var line = 1 + random.nextInt(lines);
+                var word = "typed";
+                for (var i = 0; i < word.length(); i++) {
+                    edits.add(change(++version, line, 4 + i, 4 + i, word.substring(i, i + 1)));
+                }
+                edits.add(change(++version, line, 4, 4 + word.length(), ""));
+            }
+        }
+
+        private DidChangeTextDocumentParams change(int version, int line, int start, int end, String text) {
+            var change = new TextDocumentContentChangeEvent();
+            change.range = new Range(new Position(line, start), new Position(line, end));
+            change.rangeLength = end - start;
+            change.text = text;
+            var params = new DidChangeTextDocumentParams();
+            params.textDocument = new VersionedTextDocumentIdentifier();
+            params.textDocument.uri = uri;
+            params.textDocument.version = version;
+            params.contentChanges = List.of(change);
+            return params;
+        }
+    }
+
+    @Benchmark
+    public String replayEdits(DocumentState state) {
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = state.uri;
+        open.textDocument.version = 1;
+        open.textDocument.text = state.text;
+        FileStore.open(open);
+        for (var edit : state.edits) {
+            FileStore.change(edit);
+        }
+        var contents = FileStore.contents(state.uri);
+        var close = new DidCloseTextDocumentParams();
+        close.textDocument = new TextDocumentIdentifier();
+        close.textDocument.uri = state.uri;
+        FileStore.close(close);
+        return contents;
+    }
+}
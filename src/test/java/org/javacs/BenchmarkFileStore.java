@@ -0,0 +1,69 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class BenchmarkFileStore {
+
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        /** Total number of .java files in the synthetic workspace */
+        @Param({"1000", "10000", "40000"})
+        public int files;
+
+        /** Number of .java files in each package */
+        static final int FILES_PER_PACKAGE = 100;
+
+        public Path workspaceRoot;
+        public String packageName;
+        public String className;
+
+        @Setup
+        public void setup() throws IOException {
+            LOG.info(String.format("Create workspace with %,d files...", files));
+            workspaceRoot = Files.createTempDirectory("benchmark-file-store");
+            for (var i = 0; i < files; i++) {
+                var pkg = "bench.p" + i / FILES_PER_PACKAGE;
+                var cls = "C" + i;
+                var dir = workspaceRoot.resolve(pkg.replace('.', '/'));
+                Files.createDirectories(dir);
+                Files.writeString(dir.resolve(cls + ".java"), "package " + pkg + ";\n\nclass " + cls + " {}\n");
+            }
+            FileStore.setWorkspaceRoots(Set.of(workspaceRoot));
+            // Look up a file in the middle of the workspace
+            var middle = files / 2;
+            packageName = "bench.p" + middle / FILES_PER_PACKAGE;
+            className = "C" + middle;
+        }
+
+        @TearDown
+        public void teardown() throws IOException {
+            FileStore.setWorkspaceRoots(Set.of());
+            try (var walk = Files.walk(workspaceRoot)) {
+                walk.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public Object listPackage(WorkspaceState state) {
+        return FileStore.list(state.packageName);
+    }
+
+    @Benchmark
+    public Object findDeclaringFile(WorkspaceState state) {
+        return FileStore.findDeclaringFile(state.packageName, state.className);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
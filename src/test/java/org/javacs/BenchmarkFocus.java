@@ -0,0 +1,83 @@
+package org.javacs;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.Element;
+import org.javacs.lsp.*;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkFocus {
+
+    @State(Scope.Benchmark)
+    public static class TypingState {
+        public URI uri = Paths.get("src/main/java/org/javacs/JavaCompilerService.java").toAbsolutePath().toUri();
+        public JavaCompilerService compiler;
+        String before, after;
+        int line, version;
+
+        @Setup
+        public void setup() {
+            Profiler.quiet = true;
+            FileStore.setWorkspaceRoots(Set.of(Paths.get(".").toAbsolutePath().normalize()));
+            compiler = new JavaCompilerService(Collections.emptySet(), Collections.emptySet());
+            // Type at the end of JavaCompilerService.options(_)
+            var text = FileStore.contents(uri);
+            var split = text.indexOf("        return list;\n");
+            before = text.substring(0, split);
+            after = text.substring(split);
+            line = before.split("\n", -1).length;
+            var open = new DidOpenTextDocumentParams();
+            open.textDocument = new TextDocumentItem();
+            open.textDocument.uri = uri;
+            open.textDocument.version = ++version;
+            open.textDocument.text = text;
+            FileStore.open(open);
+        }
+
+        @TearDown
+        public void teardown() {
+            Profiler.quiet = false;
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(uri);
+            FileStore.close(close);
+        }
+
+        /** Type the next keystroke, alternating between `l` and `li`, and return the column of the cursor */
+        int type() {
+            var typed = version % 2 == 0 ? "l" : "li";
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument = new VersionedTextDocumentIdentifier();
+            change.textDocument.uri = uri;
+            change.textDocument.version = ++version;
+            var edit = new TextDocumentContentChangeEvent();
+            edit.text = before + "        " + typed + "\n" + after;
+            change.contentChanges = List.of(edit);
+            FileStore.change(change);
+            return 9 + typed.length();
+        }
+    }
+
+    /** Compile a new task on every keystroke, the way CompileFocus worked before it could be patched */
+    @Benchmark
+    public List<Element> fresh(TypingState state) {
+        var column = state.type();
+        var contents = Pruner.prune(state.uri, state.line, column);
+        var focus = new CompileFocus(state.compiler, state.uri, contents, state.line, column);
+        return focus.scopeMembers("l");
+    }
+
+    @Benchmark
+    public List<Element> patched(TypingState state) {
+        var column = state.type();
+        return state.compiler.compileFocus(state.uri, state.line, column).scopeMembers("l");
+    }
+}
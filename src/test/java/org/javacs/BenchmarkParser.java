@@ -0,0 +1,52 @@
+package org.javacs;
+
+import com.sun.source.tree.CompilationUnitTree;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class BenchmarkParser {
+
+    @State(Scope.Benchmark)
+    public static class SourceState {
+        /** Every source file in this project, so each invocation parses a different mix of small and large files */
+        public List<Path> files;
+
+        int next;
+
+        @Setup
+        public void setup() throws IOException {
+            try (var walk = Files.walk(Paths.get("src/main/java").toAbsolutePath())) {
+                files = walk.filter(FileStore::isJavaFile).sorted().collect(Collectors.toList());
+            }
+        }
+
+        Path next() {
+            var file = files.get(next);
+            next = (next + 1) % files.size();
+            return file;
+        }
+    }
+
+    /** One JavacTask per file, the way Parser.parse(Path) worked before ParsePool */
+    @Benchmark
+    public CompilationUnitTree taskPerFile(SourceState state) throws IOException {
+        var file = new SourceFileObject(state.next());
+        return Parser.parseTask(file).parse().iterator().next();
+    }
+
+    @Benchmark
+    public CompilationUnitTree pooled(SourceState state) {
+        return Parser.parse(state.next());
+    }
+}
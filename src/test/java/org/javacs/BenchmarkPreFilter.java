@@ -0,0 +1,82 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkPreFilter {
+
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        /** Number of threads used to scan the workspace */
+        @Param({"1", "2", "4", "8"})
+        public int parallelism;
+
+        /** Total number of .java files in the synthetic workspace */
+        static final int FILES = 10_000;
+
+        /** Number of .java files in each package */
+        static final int FILES_PER_PACKAGE = 50;
+
+        public Path workspaceRoot;
+        public List<Path> files;
+        public ForkJoinPool pool;
+
+        @Setup
+        public void setup() throws IOException {
+            LOG.info(String.format("Create workspace with %,d files...", FILES));
+            workspaceRoot = Files.createTempDirectory("benchmark-pre-filter");
+            files = new ArrayList<>();
+            for (var i = 0; i < FILES; i++) {
+                var pkg = "bench.p" + i / FILES_PER_PACKAGE;
+                var cls = "C" + i;
+                var dir = workspaceRoot.resolve(pkg.replace('.', '/'));
+                Files.createDirectories(dir);
+                var text = new StringBuilder();
+                text.append("package ").append(pkg).append(";\n\nimport java.util.List;\n\nclass ").append(cls);
+                text.append(" {\n");
+                for (var j = 0; j < 50; j++) {
+                    text.append("    List<String> someField").append(j).append(" = List.of();\n");
+                }
+                // Only one file in a hundred mentions the word we're looking for
+                if (i % 100 == 0) text.append("    void findMe() {}\n");
+                text.append("}\n");
+                var file = dir.resolve(cls + ".java");
+                Files.writeString(file, text);
+                files.add(file);
+            }
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        @TearDown
+        public void teardown() throws IOException {
+            pool.shutdown();
+            try (var walk = Files.walk(workspaceRoot)) {
+                walk.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Path> containsWord(WorkspaceState state) {
+        return Parser.filter(state.files, f -> Parser.containsWord(f, "findMe"), state.pool);
+    }
+
+    @Benchmark
+    public List<Path> containsWordMatching(WorkspaceState state) {
+        return Parser.filter(state.files, f -> Parser.containsWordMatching(f, "fiMe"), state.pool);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
@@ -1,7 +1,9 @@
 package org.javacs;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -15,6 +17,10 @@ public class BenchmarkPruner {
 
     @State(Scope.Benchmark)
     public static class CompilerState {
+        /** Whether source files outside the batch are compiled with their method bodies erased */
+        @Param({"true", "false"})
+        public boolean signaturesOnly;
+
         public SourceFileObject file = file(false);
         public SourceFileObject pruned = file(true);
         public JavaCompilerService compiler = createCompiler();
@@ -34,13 +40,16 @@ public class BenchmarkPruner {
 
             var workspaceRoot = Paths.get(".").normalize().toAbsolutePath();
             FileStore.setWorkspaceRoots(Set.of(workspaceRoot));
-            var classPath = new InferConfig(workspaceRoot).classPath();
+            var classPath = new HashSet<Path>(new InferConfig(workspaceRoot).classPath());
+            // Leave out our own build output, so javac reads our other source files instead of their .class files
+            classPath.removeIf(p -> p.startsWith(workspaceRoot.resolve("target")));
             return new JavaCompilerService(classPath, Collections.emptySet());
         }
 
         @Setup
         public void setup() {
             Profiler.quiet = true;
+            compiler.fileManager.signaturesOnly = signaturesOnly;
         }
 
         @TearDown
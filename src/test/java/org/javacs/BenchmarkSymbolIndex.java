@@ -0,0 +1,79 @@
+package org.javacs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+public class BenchmarkSymbolIndex {
+
+    @State(Scope.Benchmark)
+    public static class WorkspaceState {
+        /** Total number of .java files in the synthetic workspace */
+        @Param({"10000", "40000"})
+        public int files;
+
+        /** Number of .java files in each package */
+        static final int FILES_PER_PACKAGE = 100;
+
+        public Path workspaceRoot;
+
+        @Setup
+        public void setup() throws IOException {
+            LOG.info(String.format("Create workspace with %,d files...", files));
+            workspaceRoot = Files.createTempDirectory("benchmark-symbol-index");
+            for (var i = 0; i < files; i++) {
+                var pkg = "bench.p" + i / FILES_PER_PACKAGE;
+                var cls = "FooBarService" + i;
+                var dir = workspaceRoot.resolve(pkg.replace('.', '/'));
+                Files.createDirectories(dir);
+                var text =
+                        "package " + pkg + ";\n\nclass " + cls + " {\n"
+                                + "    int fieldNumber" + i + ";\n"
+                                + "    void handleRequest" + i + "() {}\n"
+                                + "    String formatBody() { return null; }\n"
+                                + "}\n";
+                Files.writeString(dir.resolve(cls + ".java"), text);
+            }
+            FileStore.setWorkspaceRoots(Set.of(workspaceRoot));
+            SymbolIndex.update(FileStore.all());
+        }
+
+        @TearDown
+        public void teardown() throws IOException {
+            FileStore.setWorkspaceRoots(Set.of());
+            try (var walk = Files.walk(workspaceRoot)) {
+                walk.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public Object camelCase(WorkspaceState state) {
+        return SymbolIndex.search("fBS", 50);
+    }
+
+    @Benchmark
+    public Object prefix(WorkspaceState state) {
+        return SymbolIndex.search("handleReq", 50);
+    }
+
+    /** Simulate the user typing a query one character at a time */
+    @Benchmark
+    public Object typing(WorkspaceState state) {
+        SymbolIndex.search("f", 50);
+        SymbolIndex.search("fB", 50);
+        SymbolIndex.search("fBS", 50);
+        return SymbolIndex.search("fBSe", 50);
+    }
+
+    private static final Logger LOG = Logger.getLogger("main");
+}
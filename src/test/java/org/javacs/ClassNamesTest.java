@@ -0,0 +1,52 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class ClassNamesTest {
+    private final ClassNames names =
+            new ClassNames(
+                    Map.of(
+                            "java.util.List", PUBLIC_INTERFACE,
+                            "java.util.LinkedList", PUBLIC_CLASS,
+                            "java.util.Map", PUBLIC_INTERFACE,
+                            "java.util.concurrent.ConcurrentMap", PUBLIC_INTERFACE,
+                            "java.awt.List", PUBLIC_CLASS,
+                            "javax.lang.model.element.Element", -1));
+
+    private static final int PUBLIC_CLASS = 0x0001 | 0x0020, PUBLIC_INTERFACE = 0x0001 | 0x0200 | 0x0400;
+
+    @Test
+    public void startingWith() {
+        assertThat(
+                names.startingWith("Li"), containsInAnyOrder("java.util.List", "java.awt.List", "java.util.LinkedList"));
+        assertThat(names.startingWith("List"), containsInAnyOrder("java.util.List", "java.awt.List"));
+        assertThat(names.startingWith("Con"), contains("java.util.concurrent.ConcurrentMap"));
+        assertThat(names.startingWith("Q"), empty());
+    }
+
+    @Test
+    public void emptyPrefixMatchesEverything() {
+        assertThat(names.startingWith(""), hasSize(6));
+    }
+
+    @Test
+    public void subPackages() {
+        assertThat(names.subPackages("java"), containsInAnyOrder("java.util", "java.awt"));
+        assertThat(names.subPackages("java.util"), contains("java.util.concurrent"));
+        assertThat(names.subPackages("javax.lang"), contains("javax.lang.model"));
+        assertThat(names.subPackages(""), containsInAnyOrder("java", "javax"));
+        assertThat(names.subPackages("java.util.concurrent"), empty());
+    }
+
+    @Test
+    public void accessFlags() {
+        assertThat(names.accessFlags("java.util.List"), equalTo(PUBLIC_INTERFACE));
+        assertThat(names.accessFlags("java.awt.List"), equalTo(PUBLIC_CLASS));
+        assertThat(names.accessFlags("javax.lang.model.element.Element"), equalTo(-1));
+        assertThat(names.accessFlags("java.util.ArrayList"), equalTo(-1));
+    }
+}
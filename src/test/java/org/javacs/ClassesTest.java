@@ -16,16 +16,26 @@ public class ClassesTest {
     @Test
     public void list() {
         var jdk = Classes.jdkTopLevelClasses();
-        assertThat(jdk, hasItem("java.util.List"));
+        assertThat(jdk, hasKey("java.util.List"));
 
         var empty = Classes.classPathTopLevelClasses(Collections.emptySet());
-        assertThat(empty, not(hasItem("java.util.List")));
+        assertThat(empty, not(hasKey("java.util.List")));
     }
 
     @Test
     public void arrayList() {
         var jdk = Classes.jdkTopLevelClasses();
-        assertThat(jdk, hasItem("java.util.ArrayList"));
+        assertThat(jdk, hasKey("java.util.ArrayList"));
+    }
+
+    @Test
+    public void accessFlags() {
+        var jdk = Classes.jdkTopLevelClasses();
+        var list = jdk.get("java.util.List");
+        assertThat(list & ClassHeader.ACC_PUBLIC, not(equalTo(0)));
+        // java.util.ArrayPrefixHelpers is package-private
+        var helpers = jdk.get("java.util.ArrayPrefixHelpers");
+        assertThat(helpers & ClassHeader.ACC_PUBLIC, equalTo(0));
     }
 
     @Test
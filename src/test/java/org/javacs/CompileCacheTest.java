@@ -0,0 +1,104 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.javacs.lsp.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompileCacheTest {
+    private JavaCompilerService compiler = new JavaCompilerService(Collections.emptySet(), Collections.emptySet());
+
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(JavaCompilerServiceTest.simpleProjectSrc()));
+    }
+
+    @Test
+    public void switchBetweenFiles() {
+        var a = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+        var b = JavaCompilerServiceTest.resourceUri("Overloads.java");
+        var cache = new CompileCache(compiler);
+        var first = cache.get(a);
+        assertThat(cache.get(b), not(sameInstance(first)));
+        assertThat(cache.get(a), sameInstance(first));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        var a = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+        var b = JavaCompilerServiceTest.resourceUri("Overloads.java");
+        var c = JavaCompilerServiceTest.resourceUri("CompleteMembers.java");
+        // Room for 2 files
+        var cache = new CompileCache(compiler, 40_000_000);
+        var first = cache.get(a);
+        var evicted = cache.get(b);
+        // Using a makes b the least recently used
+        assertThat(cache.get(a), sameInstance(first));
+        cache.get(c);
+        assertThat(cache.get(a), sameInstance(first));
+        assertThat(cache.get(b), not(sameInstance(evicted)));
+    }
+
+    @Test
+    public void speculate() {
+        var a = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+        var b = JavaCompilerServiceTest.resourceUri("Overloads.java");
+        var cache = new CompileCache(compiler);
+        assertThat(cache.speculate(a, () -> false), equalTo(true));
+        assertThat(cache.speculate(b, () -> true), equalTo(false));
+        cache.get(a);
+        cache.get(b);
+        assertThat(cache.stats(), containsString(" 1 hits"));
+    }
+
+    @Test
+    public void interleaveFiles() {
+        var a = JavaCompilerServiceTest.resourceUri("MissingImport.java");
+        var b = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+        var cache = new CompileCache(compiler);
+        var missingImport = cache.get(a);
+        // Compiling b must not replace the diagnostics of a
+        cache.get(b);
+        assertThat(missingImport.fixImports(), hasItem("java.util.List"));
+        assertThat(missingImport.index(missingImport.declarations()).hasErrors, equalTo(true));
+    }
+
+    @Test
+    public void recompileEditedFile() {
+        var a = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+        var b = JavaCompilerServiceTest.resourceUri("Overloads.java");
+        var cache = new CompileCache(compiler);
+        var first = cache.get(a);
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = b;
+        open.textDocument.version = 1;
+        open.textDocument.text = FileStore.contents(b);
+        FileStore.open(open);
+        try {
+            // b might declare something a uses
+            var second = cache.get(a);
+            assertThat(second, not(sameInstance(first)));
+            assertThat(cache.get(a), sameInstance(second));
+
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument = new VersionedTextDocumentIdentifier();
+            change.textDocument.uri = b;
+            change.textDocument.version = 2;
+            var edit = new TextDocumentContentChangeEvent();
+            edit.text = "class Overloads { }";
+            change.contentChanges = List.of(edit);
+            FileStore.change(change);
+            assertThat(cache.get(a), not(sameInstance(second)));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(b);
+            FileStore.close(close);
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package org.javacs;
 
-import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,4 +26,53 @@ public class FileStoreTest {
                 FileStore.suggestedPackageName(FindResource.path("/org/javacs/example/Goto.java")),
                 equalTo("org.javacs.example"));
     }
+
+    @Test
+    public void listPackage() {
+        var example = FileStore.list("org.javacs.example");
+        assertThat(example, hasItem(FindResource.path("/org/javacs/example/Goto.java")));
+        assertThat(example, not(hasItem(FindResource.path("/org/javacs/warn/Unused.java"))));
+        assertThat(FileStore.list("org.javacs.nosuchpackage"), empty());
+    }
+
+    @Test
+    public void listPackageInOrder() {
+        var example = FileStore.list("org.javacs.example");
+        var sorted = new ArrayList<>(example);
+        Collections.sort(sorted);
+        assertThat(example, equalTo(sorted));
+    }
+
+    @Test
+    public void firstDeclaringFileWins() throws IOException {
+        var a = Files.createTempDirectory("a");
+        var b = Files.createTempDirectory("b");
+        for (var root : List.of(a, b)) {
+            var file = root.resolve("com/example/Same.java");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "package com.example; class Same {}");
+        }
+        FileStore.setWorkspaceRoots(Set.of(b, a));
+        var first = a.compareTo(b) < 0 ? a : b;
+        var found = FileStore.findDeclaringFile("com.example", "Same");
+        assertThat(found, equalTo(Optional.of(first.toAbsolutePath().normalize().resolve("com/example/Same.java"))));
+    }
+
+    @Test
+    public void findDeclaringFile() {
+        var found = FileStore.findDeclaringFile("org.javacs.example", "Goto");
+        assertThat(found, equalTo(Optional.of(FindResource.path("/org/javacs/example/Goto.java"))));
+        assertThat(FileStore.findDeclaringFile("org.javacs.warn", "Goto"), equalTo(Optional.empty()));
+    }
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        var snapshot = Files.createTempFile("FileStore", ".bin");
+        FileStore.saveSnapshot(snapshot);
+        FileStore.loadSnapshot(snapshot);
+        var root = LanguageServerFixture.DEFAULT_WORKSPACE_ROOT.toAbsolutePath();
+        FileStore.crawlWorkspace(Set.of(root), 1, ReportProgress.EMPTY).join();
+        assertThat(FileStore.list("org.javacs.example"), hasItem(FindResource.path("/org/javacs/example/Goto.java")));
+        assertThat(FileStore.packageName(FindResource.path("/org/javacs/warn/Unused.java")), equalTo("org.javacs.warn"));
+    }
 }
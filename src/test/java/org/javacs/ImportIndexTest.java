@@ -0,0 +1,54 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Path;
+import java.util.Set;
+import org.javacs.lsp.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImportIndexTest {
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    private final ImportIndex index = new ImportIndex(Set.of("java.util.List", "java.awt.List"), Set.of());
+
+    @Test
+    public void previouslyImported() {
+        assertThat(index.resolve(Set.of("List")), hasEntry("List", "java.util.List"));
+    }
+
+    @Test
+    public void declaredInWorkspace() {
+        assertThat(index.resolve(Set.of("GotoEnum")), hasEntry("GotoEnum", "org.javacs.example.GotoEnum"));
+    }
+
+    @Test
+    public void notFound() {
+        assertThat(index.resolve(Set.of("NoSuchClass")).keySet(), empty());
+    }
+
+    @Test
+    public void followEdits() throws Exception {
+        Path file = FindResource.path("/org/javacs/example/Goto.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.version = 1;
+        open.textDocument.text = "package org.javacs.example;\nimport java.awt.List;\nclass Goto { }";
+        FileStore.open(open);
+        try {
+            // Now java.util.List and java.awt.List have both been imported somewhere
+            assertThat(index.resolve(Set.of("List")).keySet(), empty());
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(file.toUri());
+            FileStore.close(close);
+        }
+        assertThat(index.resolve(Set.of("List")), hasEntry("List", "java.util.List"));
+    }
+}
@@ -3,6 +3,7 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.sun.source.tree.MethodTree;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
@@ -17,6 +18,7 @@ import java.util.stream.Collectors;
 import javax.lang.model.element.Element;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
+import org.javacs.lsp.*;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -218,6 +220,63 @@ public class JavaCompilerServiceTest {
         assertThat(diags, not(empty()));
     }
 
+    @Test
+    public void reportErrorsInShards() {
+        var files = new ArrayList<URI>();
+        for (var i = 0; i < 4; i++) files.add(resourceUri("HasError.java"));
+        for (var i = 0; i < 4; i++) files.add(resourceUri("HelloWorld.java"));
+        var shards = JavaCompilerService.shards(files, 2);
+        assertThat(shards, hasSize(2));
+        assertThat(shards.get(0), everyItem(equalTo(resourceUri("HasError.java"))));
+        assertThat(shards.get(1), everyItem(equalTo(resourceUri("HelloWorld.java"))));
+    }
+
+    @Test
+    public void reportEachShard() {
+        var reported = new ArrayList<URI>();
+        compiler.reportErrors(
+                List.of(resourceUri("HasError.java")),
+                (shard, diags) -> {
+                    reported.addAll(shard);
+                    assertThat(diags, not(empty()));
+                });
+        assertThat(reported, contains(resourceUri("HasError.java")));
+    }
+
+    @Test
+    public void reportEachFileWhenAnalyzed() {
+        var reported = new ArrayList<URI>();
+        compiler.reportErrors(
+                List.of(resourceUri("HasError.java"), resourceUri("HelloWorld.java")),
+                (files, diags) -> {
+                    assertThat(files, hasSize(1));
+                    var file = files.iterator().next();
+                    reported.add(file);
+                    for (var d : diags) assertThat(d.getSource().toUri(), equalTo(file));
+                    if (file.equals(resourceUri("HasError.java"))) assertThat(diags, not(empty()));
+                });
+        assertThat(reported, containsInAnyOrder(resourceUri("HasError.java"), resourceUri("HelloWorld.java")));
+    }
+
+    @Test
+    public void reportErrorsBeforeBatchFinishes() {
+        var hasError = resourceUri("HasError.java");
+        var helloWorld = resourceUri("HelloWorld.java");
+        var reported = new ArrayList<URI>();
+        var workAfterReport = new boolean[1];
+        compiler.reportErrors(
+                List.of(hasError, helloWorld),
+                (files, diags) -> reported.addAll(files),
+                // javac checks `cancelled` as it starts each class, so this sees whether it's still working
+                () -> {
+                    if (reported.contains(hasError) && !reported.contains(helloWorld)) workAfterReport[0] = true;
+                    return false;
+                });
+        assertThat(reported, contains(hasError, helloWorld));
+        // The file with errors was published while javac was still analyzing the rest of the batch
+        assertThat(workAfterReport[0], equalTo(true));
+    }
+
     private static List<String> errorStrings(List<Diagnostic<? extends JavaFileObject>> diags) {
         var strings = new ArrayList<String>();
         for (var d : diags) {
@@ -272,6 +331,55 @@ public class JavaCompilerServiceTest {
         assertThat(qualifiedNames, hasItem("java.util.List"));
     }
 
+    @Test
+    public void patchFocusWhileTyping() {
+        var uri = simpleProjectSrc().resolve("PatchFocus.java").toAbsolutePath().toUri();
+        var before = "class PatchFocus {\n    String field = \"\";\n    java.util.function.Supplier<String> supplier = () -> field;\n\n    void edited(String param) {\n        String local = \"\";\n";
+        var after = "    }\n\n    int after() {\n        return 1;\n    }\n}\n";
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = uri;
+        open.textDocument.version = 1;
+        open.textDocument.text = before + "        l\n" + after;
+        FileStore.open(open);
+        try {
+            var first = compiler.compileFocus(uri, 7, 10);
+            var field = first.scopeMembers("field").get(0);
+            assertThat(elementNames(first.scopeMembers("l")), hasItem("local"));
+
+            // Typing inside the same method re-attributes it in the same task
+            edit(uri, 2, before + "        int typed = 1;\n\n        local.\n" + after);
+            var ctx = compiler.parseFile(uri).completionContext(9, 15).get();
+            var patched = compiler.compileFocus(uri, ctx.line, ctx.character);
+            assertThat(patched.scopeMembers("field").get(0), sameInstance(field));
+            assertThat(completionNames(patched.completeMembers(false)), hasItem("length"));
+            assertThat(elementNames(patched.scopeMembers("t")), hasItem("typed"));
+            var method = patched.scopeMembers("after").get(0);
+            assertThat(patched.path(method).get().getLeaf(), instanceOf(MethodTree.class));
+
+            // Editing outside the method starts over
+            edit(uri, 3, before.replace("String field", "String renamed") + "        r\n" + after);
+            var fresh = compiler.compileFocus(uri, 7, 10);
+            assertThat(elementNames(fresh.scopeMembers("r")), hasItem("renamed"));
+            assertThat(fresh.scopeMembers("field"), empty());
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(uri);
+            FileStore.close(close);
+        }
+    }
+
+    private void edit(URI uri, int version, String text) {
+        var change = new DidChangeTextDocumentParams();
+        change.textDocument = new VersionedTextDocumentIdentifier();
+        change.textDocument.uri = uri;
+        change.textDocument.version = version;
+        var edit = new TextDocumentContentChangeEvent();
+        edit.text = text;
+        change.contentChanges = List.of(edit);
+        FileStore.change(change);
+    }
+
     @Test
     public void matchesPartialName() {
         assertTrue(CompileFocus.matchesPartialName("foobar", "foo"));
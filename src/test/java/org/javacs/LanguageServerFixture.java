@@ -51,6 +51,7 @@ class LanguageServerFixture {
         init.rootUri = workspaceRoot.toUri();
         server.initialize(init);
         server.initialized();
+        server.workspaceCrawl.join();
 
         return server;
     }
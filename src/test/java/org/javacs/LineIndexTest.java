@@ -0,0 +1,33 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LineIndexTest {
+    private final LineIndex lines = new LineIndex("a\nbc\n\nd");
+
+    @Test
+    public void position() {
+        assertThat(lines.position(0).line, equalTo(0));
+        assertThat(lines.position(3).line, equalTo(1));
+        assertThat(lines.position(3).character, equalTo(1));
+        // The newline belongs to the line it ends
+        assertThat(lines.position(4).line, equalTo(1));
+        assertThat(lines.position(4).character, equalTo(2));
+        assertThat(lines.position(5).line, equalTo(2));
+        assertThat(lines.position(7).line, equalTo(3));
+        assertThat(lines.position(7).character, equalTo(1));
+        // javac reports NOPOS as -1
+        assertThat(lines.position(-1).line, equalTo(0));
+    }
+
+    @Test
+    public void offset() {
+        assertThat(lines.offset(1, 1), equalTo(3));
+        assertThat(lines.offset(1, 10), equalTo(4));
+        assertThat(lines.offset(3, 0), equalTo(6));
+        assertThat(lines.offset(10, 0), equalTo(7));
+    }
+}
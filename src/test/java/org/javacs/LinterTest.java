@@ -0,0 +1,145 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.tools.Diagnostic;
+import org.javacs.lsp.DidChangeTextDocumentParams;
+import org.javacs.lsp.DidCloseTextDocumentParams;
+import org.javacs.lsp.DidOpenTextDocumentParams;
+import org.javacs.lsp.TextDocumentContentChangeEvent;
+import org.javacs.lsp.TextDocumentIdentifier;
+import org.javacs.lsp.TextDocumentItem;
+import org.javacs.lsp.VersionedTextDocumentIdentifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LinterTest {
+    private static class Published {
+        final URI file;
+        final String contents;
+        final int errors;
+
+        Published(URI file, String contents, int errors) {
+            this.file = file;
+            this.contents = contents;
+            this.errors = errors;
+        }
+    }
+
+    private JavaCompilerService compiler = new JavaCompilerService(Collections.emptySet(), Collections.emptySet());
+    private LinkedBlockingQueue<Published> published = new LinkedBlockingQueue<>();
+    private Linter linter =
+            new Linter(
+                    (file, contents, diagnostics) -> {
+                        var errors = diagnostics.stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR).count();
+                        published.add(new Published(file, contents, (int) errors));
+                    });
+    private URI file = JavaCompilerServiceTest.resourceUri("HelloWorld.java");
+    private int version = 0;
+
+    @Before
+    public void open() {
+        FileStore.setWorkspaceRoots(Set.of(JavaCompilerServiceTest.simpleProjectSrc()));
+        linter.delay = Duration.ofMillis(100);
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = file;
+        open.textDocument.version = ++version;
+        open.textDocument.text = FileStore.contents(file);
+        FileStore.open(open);
+    }
+
+    @After
+    public void close() {
+        var close = new DidCloseTextDocumentParams();
+        close.textDocument = new TextDocumentIdentifier(file);
+        FileStore.close(close);
+    }
+
+    private void edit(String text) {
+        var change = new DidChangeTextDocumentParams();
+        change.textDocument = new VersionedTextDocumentIdentifier();
+        change.textDocument.uri = file;
+        change.textDocument.version = ++version;
+        var edit = new TextDocumentContentChangeEvent();
+        edit.text = text;
+        change.contentChanges = List.of(edit);
+        FileStore.change(change);
+    }
+
+    private Published next() throws InterruptedException {
+        return published.poll(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void publishLatestVersion() throws InterruptedException {
+        edit("class HelloWorld { void test() { int x = \"broken\"; } }");
+        linter.schedule(compiler, file);
+        var fixed = "class HelloWorld { void test() { int x = 1; } }";
+        edit(fixed);
+        linter.schedule(compiler, file);
+        var first = next();
+        assertThat(first.file, equalTo(file));
+        assertThat(first.contents, equalTo(fixed));
+        assertThat(first.errors, equalTo(0));
+        // The first version was cancelled before it could run
+        assertThat(published.poll(500, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    @Test
+    public void reportErrorsWhileTyping() throws InterruptedException {
+        edit("class HelloWorld { void test() { int x = \"broken\"; } }");
+        linter.schedule(compiler, file);
+        assertThat(next().errors, equalTo(1));
+    }
+
+    @Test
+    public void skipOutdatedVersion() throws InterruptedException {
+        linter.schedule(compiler, file);
+        // An edit that hasn't been scheduled yet, so the pending run is for an old version
+        edit("class HelloWorld { void test() { int x = \"broken\"; } }");
+        assertThat(published.poll(500, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    @Test
+    public void lintAllOpenDocuments() throws InterruptedException {
+        var other = JavaCompilerServiceTest.resourceUri("HasError.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = other;
+        open.textDocument.version = 1;
+        open.textDocument.text = FileStore.contents(other);
+        FileStore.open(open);
+        try {
+            linter.scheduleAll(compiler, List.of(file, other));
+            var errors = new HashMap<URI, Integer>();
+            for (var i = 0; i < 2; i++) {
+                var next = next();
+                errors.put(next.file, next.errors);
+            }
+            assertThat(errors, hasEntry(file, 0));
+            assertThat(errors, hasEntry(other, 1));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(other);
+            FileStore.close(close);
+        }
+    }
+
+    @Test
+    public void cancelClosedFile() throws InterruptedException {
+        linter.schedule(compiler, file);
+        linter.cancel(file);
+        assertThat(published.poll(500, TimeUnit.MILLISECONDS), nullValue());
+    }
+}
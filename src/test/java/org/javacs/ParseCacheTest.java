@@ -0,0 +1,58 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Set;
+import org.javacs.lsp.*;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParseCacheTest {
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    @Test
+    public void reuseUnchangedFile() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        assertThat(ParseCache.get(file), sameInstance(ParseCache.get(file)));
+    }
+
+    @Test
+    public void reparseEditedFile() {
+        var file = FindResource.path("/org/javacs/example/Goto.java");
+        var open = new DidOpenTextDocumentParams();
+        open.textDocument = new TextDocumentItem();
+        open.textDocument.uri = file.toUri();
+        open.textDocument.version = 1;
+        open.textDocument.text = "class Goto { }";
+        FileStore.open(open);
+        try {
+            var before = ParseCache.get(file);
+            assertThat(ParseCache.get(file), sameInstance(before));
+
+            var change = new DidChangeTextDocumentParams();
+            change.textDocument = new VersionedTextDocumentIdentifier();
+            change.textDocument.uri = file.toUri();
+            change.textDocument.version = 2;
+            var edit = new TextDocumentContentChangeEvent();
+            edit.range = new Range(new Position(0, 12), new Position(0, 12));
+            edit.text = "int x; ";
+            change.contentChanges = List.of(edit);
+            FileStore.change(change);
+
+            var after = ParseCache.get(file);
+            assertThat(after, not(sameInstance(before)));
+            assertThat(after.getTypeDecls(), hasSize(1));
+            assertThat(after.toString(), containsString("int x;"));
+        } finally {
+            var close = new DidCloseTextDocumentParams();
+            close.textDocument = new TextDocumentIdentifier(file.toUri());
+            FileStore.close(close);
+        }
+        assertThat(ParseCache.get(file).toString(), containsString("GotoOther"));
+    }
+}
@@ -3,6 +3,8 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Collections;
 import org.junit.Test;
@@ -32,6 +34,51 @@ public class ParserTest {
         assertFalse(Parser.containsWordMatching(largeFile, "removeMethodBodiez"));
     }
 
+    @Test
+    public void searchPastFirstMegabyte() throws IOException {
+        var file = Files.createTempFile("Huge", ".java");
+        try {
+            var text = new StringBuilder("class Huge {\n");
+            while (text.length() < 2 * 1024 * 1024) {
+                text.append("    int someField").append(text.length()).append(";\n");
+            }
+            text.append("    void needleInHaystack() {}\n}\n");
+            Files.writeString(file, text);
+            assertTrue(Parser.containsWord(file, "needleInHaystack"));
+            assertTrue(Parser.containsText(file, "needleIn"));
+            assertTrue(Parser.containsWordMatching(file, "nIHaystack"));
+            assertFalse(Parser.containsWord(file, "needleIn"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void searchNonAsciiFile() throws IOException {
+        var file = Files.createTempFile("NonAscii", ".java");
+        try {
+            Files.writeString(file, "class \u00dcn\u00efc\u00f6d\u00e9 { int fooB\u00e4r; int fooBar; }");
+            assertTrue(Parser.containsWordMatching(file, "fBar"));
+            assertTrue(Parser.containsWordMatching(file, "fB\u00e4r"));
+            assertFalse(Parser.containsWordMatching(file, "fBaz"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void pooledParseHasPositions() {
+        for (var i = 0; i < 2; i++) {
+            var file = new SourceFileObject(Paths.get("/Pooled" + i + ".java"), "class Pooled" + i + " {\n  int x;\n}");
+            var root = Parser.parse(file);
+            assertThat(root.getSourceFile(), sameInstance(file));
+            var cls = root.getTypeDecls().get(0);
+            assertThat(ParsePool.positions.getStartPosition(root, cls), equalTo(0L));
+            assertThat(ParsePool.positions.getEndPosition(root, cls), equalTo((long) file.contents.length()));
+            assertThat(root.getLineMap().getLineNumber(ParsePool.positions.getEndPosition(root, cls)), equalTo(3L));
+        }
+    }
+
     @Test
     public void searchSmallFile() {
         var smallFile = Paths.get(FindResource.uri("/org/javacs/example/Goto.java"));
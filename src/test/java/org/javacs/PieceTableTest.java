@@ -0,0 +1,72 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class PieceTableTest {
+    @Test
+    public void insertDeleteReplace() {
+        var text = new PieceTable("class Foo {\n    void bar() {}\n}\n");
+        text = text.replace(1, 9, 1, 12, "baz");
+        assertThat(text.toString(), equalTo("class Foo {\n    void baz() {}\n}\n"));
+        text = text.replace(1, 16, 1, 16, "\n        return;\n    ");
+        assertThat(text.toString(), equalTo("class Foo {\n    void baz() {\n        return;\n    }\n}\n"));
+        text = text.replace(0, 9, 1, 0, "");
+        assertThat(text.toString(), equalTo("class Foo    void baz() {\n        return;\n    }\n}\n"));
+    }
+
+    @Test
+    public void offsets() {
+        var text = new PieceTable("a\nbc\n\nd");
+        assertThat(text.offset(0, 0), equalTo(0));
+        assertThat(text.offset(1, 1), equalTo(3));
+        // Past the end of the line
+        assertThat(text.offset(1, 10), equalTo(4));
+        assertThat(text.offset(2, 0), equalTo(5));
+        assertThat(text.offset(3, 1), equalTo(7));
+        // Past the end of the file
+        assertThat(text.offset(10, 0), equalTo(7));
+    }
+
+    @Test
+    public void matchesStringBuilder() {
+        var random = new Random(1);
+        var expected = new StringBuilder("line one\nline two\nline three\n");
+        var text = new PieceTable(expected.toString());
+        for (var i = 0; i < 2000; i++) {
+            var start = random.nextInt(expected.length() + 1);
+            var end = Math.min(expected.length(), start + random.nextInt(5));
+            var insert = random.nextInt(10) == 0 ? "\n" : "x" + i;
+            expected.replace(start, end, insert);
+            text = text.replace(start, end, insert);
+            if (i % 100 == 0) assertThat(text.toString(), equalTo(expected.toString()));
+            var line = random.nextInt(20);
+            assertThat(text.offset(line, 0), equalTo(lineStart(expected, line)));
+        }
+        assertThat(text.toString(), equalTo(expected.toString()));
+        assertThat(text.charAt(expected.length() / 2), equalTo(expected.charAt(expected.length() / 2)));
+    }
+
+    @Test
+    public void oldVersionsDontChange() {
+        var before = new PieceTable("class Foo {\n}\n");
+        var after = before.replace(1, 0, 1, 0, "    int x;\n");
+        assertThat(before.toString(), equalTo("class Foo {\n}\n"));
+        assertThat(before.offset(1, 0), equalTo(12));
+        assertThat(after.toString(), equalTo("class Foo {\n    int x;\n}\n"));
+        assertThat(after.offset(2, 0), equalTo(23));
+    }
+
+    private static int lineStart(CharSequence text, int line) {
+        var offset = 0;
+        for (var i = 0; i < line; i++) {
+            while (offset < text.length() && text.charAt(offset) != '\n') offset++;
+            if (offset == text.length()) return offset;
+            offset++;
+        }
+        return offset;
+    }
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.Matchers.*;
 import static org.javacs.JavaCompilerServiceTest.*;
 import static org.junit.Assert.*;
 
+import java.nio.file.Paths;
 import org.junit.Test;
 
 public class PrunerTest {
@@ -42,4 +43,13 @@ public class PrunerTest {
         var expected = contents("PruneWords_erased.java");
         assertThat(actual, equalToIgnoringWhiteSpace(expected));
     }
+
+    @Test
+    public void eraseBodies() {
+        var file = Paths.get(resourceUri("PruneBodies.java"));
+        var actual = Pruner.eraseBodies(file);
+        var expected = contents("PruneBodies_erased.java");
+        assertThat(actual, equalToIgnoringWhiteSpace(expected));
+        assertThat(actual.length(), equalTo(FileStore.contents(file).length()));
+    }
 }
@@ -71,6 +71,14 @@ public class SearchTest {
         assertThat(all, hasItem("methodStatic"));
     }
 
+    @Test
+    public void exactMatchFirst() {
+        var results = server.workspaceSymbols(new WorkspaceSymbolParams("AutocompleteBetweenLines"));
+
+        assertThat(results, not(empty()));
+        assertThat(results.get(0).name, equalTo("AutocompleteBetweenLines"));
+    }
+
     @Test
     public void symbolsInFile() {
         var path = "/org/javacs/example/AutocompleteMemberFixed.java";
@@ -0,0 +1,65 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class SourceHeaderTest {
+    @Test
+    public void packageAndImports() {
+        var header =
+                SourceHeader.parse(
+                        "package a.b;\n"
+                                + "import java.util.List;\n"
+                                + "import java.io.*;\n"
+                                + "import static org.junit.Assert.assertThat;\n"
+                                + "class Foo { import x.y.Z; }");
+        assertThat(header.packageName, equalTo("a.b"));
+        assertThat(header.imports, contains("java.util.List", "java.io.*"));
+        assertThat(header.staticImports, contains("org.junit.Assert.assertThat"));
+    }
+
+    @Test
+    public void comments() {
+        var header =
+                SourceHeader.parse(
+                        "/* class Foo */\n"
+                                + "// interface Bar\n"
+                                + "package /* inline */ a . b;\n"
+                                + "/** import x.y.Z; */\n"
+                                + "import java.util.List; // trailing\n"
+                                + "public class Foo {}");
+        assertThat(header.packageName, equalTo("a.b"));
+        assertThat(header.imports, contains("java.util.List"));
+    }
+
+    @Test
+    public void stopAtAnyDeclaration() {
+        for (var decl : new String[] {"interface", "enum", "record", "@interface", "public final class"}) {
+            var header = SourceHeader.parse("package a;\nimport b.C;\n" + decl + " Foo {}\nimport d.E;\n");
+            assertThat(decl, header.packageName, equalTo("a"));
+            assertThat(decl, header.imports, contains("b.C"));
+        }
+    }
+
+    @Test
+    public void annotatedPackage() {
+        var header = SourceHeader.parse("@Deprecated @SuppressWarnings(value = \"a)b\")\npackage a.b;\n");
+        assertThat(header.packageName, equalTo("a.b"));
+    }
+
+    @Test
+    public void noPackage() {
+        var header = SourceHeader.parse("import java.util.List;\nclass Foo {}");
+        assertThat(header.packageName, equalTo(""));
+        assertThat(header.imports, contains("java.util.List"));
+    }
+
+    @Test
+    public void nonAsciiNames() {
+        var header = SourceHeader.parse("package caf\u00e9;\nimport caf\u00e9.\u00dcber;\n");
+        assertThat(header.packageName, equalTo("caf\u00e9"));
+        assertThat(header.imports, contains("caf\u00e9.\u00dcber"));
+    }
+}
@@ -3,6 +3,7 @@ package org.javacs;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.util.List;
 import org.junit.Test;
 
 public class StringSearchTest {
@@ -54,4 +55,15 @@ public class StringSearchTest {
         testNextWord("aa", "a aa", 2);
         testNextWord("aa", "aa a", 0);
     }
+
+    @Test
+    public void testAnyWord() {
+        var search = new StringSearch.AnyWord(List.of("foo", "bar", "foobar", "ar"));
+        assertThat(search.wordsIn("foo barfoo foobar"), containsInAnyOrder("foo", "foobar"));
+        assertThat(search.wordsIn("xfoo bar. $ar _foo"), containsInAnyOrder("bar"));
+        assertThat(search.wordsIn("nothing here"), empty());
+        assertThat(search.nextWord("a foox bar"), equalTo(7));
+        assertThat(search.nextWord("foobarx"), equalTo(-1));
+        assertThat(new StringSearch.AnyWord(List.of()).nextWord("foo"), equalTo(-1));
+    }
 }
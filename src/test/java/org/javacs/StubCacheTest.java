@@ -0,0 +1,120 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.tools.StandardLocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StubCacheTest {
+    private JavaCompilerService compiler = new JavaCompilerService(Collections.emptySet(), Collections.emptySet());
+    private Path workspace, cache, dependency, user;
+
+    @Before
+    public void compileStubs() throws IOException {
+        workspace = Files.createTempDirectory("workspace");
+        dependency = workspace.resolve("a/Dependency.java");
+        Files.createDirectories(dependency.getParent());
+        Files.writeString(
+                dependency,
+                "package a;\n"
+                        + "public class Dependency {\n"
+                        + "    public int twice(int x) { return x * 2; }\n"
+                        + "    public static class Inner {}\n"
+                        + "}\n");
+        user = workspace.resolve("b/User.java");
+        Files.createDirectories(user.getParent());
+        Files.writeString(
+                user,
+                "package b;\n"
+                        + "class User {\n"
+                        + "    int test() { return new a.Dependency().twice(1); }\n"
+                        + "    a.Dependency.Inner inner() { return new a.Dependency.Inner(); }\n"
+                        + "    String error() { return new a.Dependency().twice(1); }\n"
+                        + "}\n");
+        FileStore.setWorkspaceRoots(Set.of(workspace));
+        cache = Files.createTempDirectory("cache");
+        StubCache.setDirectory(cache, Set.of());
+        while (StubCache.update(compiler, () -> false))
+            ;
+    }
+
+    @After
+    public void stopUsingStubs() {
+        StubCache.clear();
+        FileStore.setWorkspaceRoots(Set.of(JavaCompilerServiceTest.simpleProjectSrc()));
+    }
+
+    @Test
+    public void compileStubsOfUnchangedSources() {
+        var stubs = StubCache.stubs(dependency);
+        assertThat(stubs.isPresent(), equalTo(true));
+        assertThat(stubs.get(), hasSize(2));
+        var fileManager = new SourceFileManager();
+        var names = new ArrayList<String>();
+        for (var stub : stubs.get()) names.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, stub));
+        assertThat(names, containsInAnyOrder("a.Dependency", "a.Dependency$Inner"));
+    }
+
+    @Test
+    public void compileAgainstStubs() {
+        var diags = compiler.reportErrors(List.of(user.toUri()));
+        assertThat(diags, hasSize(1));
+        assertThat(diags.get(0).getLineNumber(), equalTo(5L));
+    }
+
+    @Test
+    public void readStubsInsteadOfSources() throws IOException {
+        // The same diagnostics come from the source path, so check which files javac actually parses
+        var parsed = new ArrayList<URI>();
+        var fileManager = new SourceFileManager();
+        var sources = List.of(new SourceFileObject(user));
+        var options = JavaCompilerService.options(compiler.classPath);
+        var task = (JavacTask) compiler.compiler.getTask(null, fileManager, __ -> {}, options, List.of(), sources);
+        task.addTaskListener(
+                new TaskListener() {
+                    @Override
+                    public void finished(TaskEvent e) {
+                        if (e.getKind() == TaskEvent.Kind.PARSE) parsed.add(e.getSourceFile().toUri());
+                    }
+                });
+        task.analyze();
+        assertThat(parsed, contains(user.toUri()));
+    }
+
+    @Test
+    public void deleteStubsOfOldVersions() throws IOException {
+        Files.writeString(
+                dependency,
+                "package a;\n"
+                        + "public class Dependency {\n"
+                        + "    public int twice(int x) { return x + x; }\n"
+                        + "    public static class Inner {}\n"
+                        + "}\n");
+        Files.setLastModifiedTime(dependency, FileTime.from(Instant.now().plusSeconds(1)));
+        FileStore.externalChange(dependency);
+        while (StubCache.update(compiler, () -> false))
+            ;
+        // Dependency, Dependency.Inner and User, each compiled from the current version of its source
+        try (var walk = Files.walk(cache)) {
+            var classes = walk.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList());
+            assertThat(classes, hasSize(3));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.javacs;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WordIndexTest {
+    @Before
+    public void setWorkspaceRoot() {
+        FileStore.setWorkspaceRoots(Set.of(LanguageServerFixture.DEFAULT_WORKSPACE_ROOT));
+    }
+
+    @Test
+    public void words() {
+        var words = WordIndex.words("class Foo$Bar { int _x1 = 2; }");
+        assertThat(words, arrayContainingInAnyOrder("class", "Foo$Bar", "int", "_x1"));
+    }
+
+    @Test
+    public void filesContaining() {
+        var gotoFile = FindResource.path("/org/javacs/example/Goto.java");
+        var unused = FindResource.path("/org/javacs/warn/Unused.java");
+        var found = WordIndex.filesContaining(List.of(gotoFile, unused), "GotoOther");
+        assertThat(found, contains(gotoFile));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        var gotoFile = FindResource.path("/org/javacs/example/Goto.java");
+        WordIndex.update(List.of(gotoFile));
+        var index = Files.createTempFile("WordIndex", ".bin");
+        WordIndex.save(index);
+        WordIndex.remove(gotoFile);
+        WordIndex.load(index);
+        assertThat(WordIndex.filesContaining(List.of(gotoFile), "GotoOther"), contains(gotoFile));
+    }
+}
@@ -0,0 +1,17 @@
+class PruneBodies {
+    final int blank;
+    static final int CONSTANT = 1;
+    Runnable lambda = () -> { System.out.println("erase lambda bodies"); };
+
+    PruneBodies(int blank) {
+        super();
+        this.blank = blank + CONSTANT * 100;
+    }
+
+    int eraseThis() {
+        var x = blank * 2;
+        return x + 1000000;
+    }
+
+    int tooShort() { return 1; }
+}
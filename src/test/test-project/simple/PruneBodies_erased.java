@@ -0,0 +1,16 @@
+class PruneBodies {
+    final int blank;
+    static final int CONSTANT = 1;
+    Runnable lambda = () -> { throw null; };
+
+    PruneBodies(int blank) {
+        super();
+        throw null;
+    }
+
+    int eraseThis() {
+        throw null;
+    }
+
+    int tooShort() { return 1; }
+}